@@ -16,12 +16,16 @@
  */
 package org.uimafit.component.initialize;
 
+import java.lang.ref.SoftReference;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 import org.apache.uima.UIMAFramework;
 import org.apache.uima.UimaContext;
@@ -38,6 +42,7 @@ import org.apache.uima.resource.metadata.ResourceMetaData;
 import org.springframework.beans.MutablePropertyValues;
 import org.springframework.beans.PropertyAccessorUtils;
 import org.springframework.beans.PropertyValue;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.ObjectUtils;
 import org.springframework.validation.DataBinder;
 import org.springframework.validation.ObjectError;
@@ -55,6 +60,22 @@ import org.uimafit.util.ReflectionUtil;
 
 public final class ConfigurationParameterInitializer {
 
+	/**
+	 * Field types which can take a parameter value without conversion.
+	 */
+	private static final Set<Class<?>> DIRECT_TYPES = new HashSet<Class<?>>();
+
+	static {
+		Class<?>[] types = { String.class, Boolean.class, Integer.class, Float.class,
+				String[].class, Boolean[].class, Integer[].class, Float[].class };
+		for (Class<?> type : types) {
+			DIRECT_TYPES.add(type);
+		}
+	}
+
+	private static final Map<Class<?>, SoftReference<List<ParameterBinding>>> BINDINGS =
+			new WeakHashMap<Class<?>, SoftReference<List<ParameterBinding>>>();
+
 	private ConfigurationParameterInitializer() {
 		// Utility class
 	}
@@ -82,58 +103,41 @@ public final class ConfigurationParameterInitializer {
 		MutablePropertyValues values = new MutablePropertyValues();
 		List<String> mandatoryValues = new ArrayList<String>();
 		
-		for (Field field : ReflectionUtil.getFields(component)) { // component.getClass().getDeclaredFields())
-			if (ConfigurationParameterFactory.isConfigurationParameterField(field)) {
-				org.uimafit.descriptor.ConfigurationParameter annotation = field
-						.getAnnotation(org.uimafit.descriptor.ConfigurationParameter.class);
+		for (ParameterBinding binding : getBindings(component.getClass())) {
+			// Obtain either from the context - or - if the context does not provide the
+			// parameter, check if there is a default value. Note there are three possibilities:
+			// 1) Parameter present and set
+			// 2) Parameter present and set to null (null value)
+			// 3) Parameter not present (also provided as null value by UIMA)
+			// Unfortunately we cannot make a difference between case 2 and 3 since UIMA does 
+			// not allow us to actually get a list of the parameters set in the context. We can
+			// only get a list of the declared parameters. Thus we have to rely on the null
+			// value.
+			Object parameterValue = context.getConfigParameterValue(binding.parameterName);
+			if (parameterValue == null) {
+				parameterValue = binding.getDefaultValue();
+			}
 
-				Object parameterValue;
-				String parameterName = ConfigurationParameterFactory
-						.getConfigurationParameterName(field);
+			// Values which need no conversion are written directly, everything else is left to
+			// the data binder.
+			if (parameterValue != null && binding.set(component, parameterValue)) {
+				continue;
+			}
 
-				// Obtain either from the context - or - if the context does not provide the
-				// parameter, check if there is a default value. Note there are three possibilities:
-				// 1) Parameter present and set
-				// 2) Parameter present and set to null (null value)
-				// 3) Parameter not present (also provided as null value by UIMA)
-				// Unfortunately we cannot make a difference between case 2 and 3 since UIMA does 
-				// not allow us to actually get a list of the parameters set in the context. We can
-				// only get a list of the declared parameters. Thus we have to rely on the null
-				// value.
-				parameterValue = context.getConfigParameterValue(parameterName);
-				if (parameterValue == null) {
-					parameterValue = ConfigurationParameterFactory.getDefaultValue(field);
-				}
-				
-				if (parameterValue != null) {
-					values.addPropertyValue(field.getName(), parameterValue);
-				}
+			if (parameterValue != null) {
+				values.addPropertyValue(binding.field.getName(), parameterValue);
+			}
 
-				// TODO does this check really belong here? It seems that
-				// this check is already performed by UIMA
-				if (annotation.mandatory()) {
-					mandatoryValues.add(field.getName());
-					
-//					if (parameterValue == null) {
-//						final String key = ResourceInitializationException.CONFIG_SETTING_ABSENT;
-//						throw new ResourceInitializationException(key,
-//								new Object[] { configurationParameterName });
-//					}
-				}
-//				else {
-//					if (parameterValue == null) {
-//						continue;
-//					}
-//				}
-//				final Object fieldValue = convertValue(field, parameterValue);
-//				try {
-//					setParameterValue(component, field, fieldValue);
-//				}
-//				catch (Exception e) {
-//					throw new ResourceInitializationException(e);
-//				}
+			// TODO does this check really belong here? It seems that
+			// this check is already performed by UIMA
+			if (binding.mandatory) {
+				mandatoryValues.add(binding.field.getName());
 			}
 		}
+
+		if (values.isEmpty() && mandatoryValues.isEmpty()) {
+			return;
+		}
 		
 		DataBinder binder = new DataBinder(component) {
 			@Override
@@ -191,6 +195,29 @@ public final class ConfigurationParameterInitializer {
 		}
 	}
 
+	/**
+	 * Get the bindings of the configuration parameters declared by the given class. The bindings
+	 * are only created once per class.
+	 */
+	private static List<ParameterBinding> getBindings(Class<?> aClass) {
+		synchronized (BINDINGS) {
+			SoftReference<List<ParameterBinding>> ref = BINDINGS.get(aClass);
+			List<ParameterBinding> bindings = ref != null ? ref.get() : null;
+			if (bindings == null) {
+				bindings = new ArrayList<ParameterBinding>();
+				for (Field field : ReflectionUtil.getFields(aClass)) {
+					if (ConfigurationParameterFactory.isConfigurationParameterField(field)) {
+						bindings.add(new ParameterBinding(field));
+					}
+				}
+				// The bindings refer to the class through their fields, so they must only be
+				// held softly. Otherwise the class could never be removed from the cache.
+				BINDINGS.put(aClass, new SoftReference<List<ParameterBinding>>(bindings));
+			}
+			return bindings;
+		}
+	}
+
 	/**
 	 * Initialize a component from a map.
 	 *
@@ -269,6 +296,68 @@ public final class ConfigurationParameterInitializer {
 		initialize(component, settings.getParameterSettings());
 	}
 
+	/**
+	 * A configuration parameter field along with the information required to set it.
+	 */
+	private static final class ParameterBinding {
+		final Field field;
+		final String parameterName;
+		final boolean mandatory;
+
+		/**
+		 * The type of value which can be written to the field directly or {@code null} if values
+		 * always need to be converted.
+		 */
+		private final Class<?> directType;
+
+		private final Object defaultValue;
+
+		ParameterBinding(Field aField) {
+			field = aField;
+			parameterName = ConfigurationParameterFactory.getConfigurationParameterName(aField);
+			mandatory = aField.getAnnotation(ConfigurationParameter.class).mandatory();
+			defaultValue = ConfigurationParameterFactory.getDefaultValue(aField);
+
+			Class<?> type = aField.getType().isPrimitive() ? ClassUtils
+					.resolvePrimitiveIfNecessary(aField.getType()) : aField.getType();
+			if (DIRECT_TYPES.contains(type)) {
+				aField.setAccessible(true);
+				directType = type;
+			}
+			else {
+				directType = null;
+			}
+		}
+
+		Object getDefaultValue() {
+			// Multi-valued defaults must not be shared between components
+			return defaultValue instanceof Object[] ? ((Object[]) defaultValue).clone()
+					: defaultValue;
+		}
+
+		/**
+		 * Write the value directly to the field of the component if that is possible without
+		 * conversion.
+		 *
+		 * @return whether the value has been written.
+		 */
+		boolean set(Object aComponent, Object aValue) {
+			if (directType == null || !directType.isInstance(aValue)) {
+				return false;
+			}
+
+			// Like the data binder, do not hand out the array held by the context
+			Object value = aValue instanceof Object[] ? ((Object[]) aValue).clone() : aValue;
+			try {
+				field.set(aComponent, value);
+				return true;
+			}
+			catch (IllegalAccessException e) {
+				return false;
+			}
+		}
+	}
+
 //	/**
 //	 * This method converts UIMA values to values that are appropriate for instantiating the
 //	 * annotated member variable. For example, if the "uima" value is a string array and the member
@@ -21,14 +21,25 @@ package org.uimafit.component.initialize;
 import static org.uimafit.factory.ExternalResourceFactory.PREFIX_SEPARATOR;
 import static org.uimafit.factory.ExternalResourceFactory.createExternalResourceDependency;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
 
 import org.apache.uima.UimaContext;
 import org.apache.uima.UimaContextAdmin;
@@ -42,7 +53,6 @@ import org.apache.uima.resource.impl.ResourceManager_impl;
 import org.uimafit.component.ExternalResourceAware;
 import org.uimafit.descriptor.ExternalResource;
 import org.uimafit.descriptor.ExternalResourceLocator;
-import org.uimafit.util.ReflectionUtil;
 
 /**
  * Configurator class for {@link ExternalResource} annotations.
@@ -51,8 +61,48 @@ import org.uimafit.util.ReflectionUtil;
  */
 public class ExternalResourceInitializer {
 	
-	private static final Object INITIALIZED = new Object();
-	private static Map<Object, Object> initializedResources = new WeakHashMap<Object, Object>();
+	/**
+	 * The initialization state of the resources which have been initialized by this class, keyed
+	 * by resource identity. The resources are only referenced weakly, so we automatically forget
+	 * about resources that are garbage collected.
+	 */
+	private static final ConcurrentMap<ResourceKey, Initialization> initializedResources =
+			new ConcurrentHashMap<ResourceKey, Initialization>();
+	private static final ReferenceQueue<Object> collectedResources = new ReferenceQueue<Object>();
+
+	/**
+	 * Identifies the thread owning an {@link Initialization} without keeping the thread alive.
+	 */
+	private static final ThreadLocal<Object> ownerToken = new ThreadLocal<Object>() {
+		@Override
+		protected Object initialValue() {
+			return new Object();
+		}
+	};
+
+	/**
+	 * The fields into which resources are injected by class.
+	 */
+	private static final Map<Class<?>, SoftReference<List<ResourceField>>> resourceFields =
+			new WeakHashMap<Class<?>, SoftReference<List<ResourceField>>>();
+
+	/**
+	 * The internal map of resources of {@link ResourceManager_impl}.
+	 */
+	private static final Field RESOURCE_MAP_FIELD;
+
+	static {
+		Field field;
+		try {
+			field = ResourceManager_impl.class.getDeclaredField("mResourceMap");
+			field.setAccessible(true);
+		}
+		catch (Exception e) {
+			// Reported when the resources of a context are accessed
+			field = null;
+		}
+		RESOURCE_MAP_FIELD = field;
+	}
 	
 	/**
 	 * Configure a component from the given context.
@@ -68,53 +118,45 @@ public class ExternalResourceInitializer {
 	 */
 	public static <T> void initialize(UimaContext context, T object)
 			throws ResourceInitializationException {
-		configure(context, object.getClass(), object.getClass(), object,
-				getResourceDeclarations(object.getClass()));
+		List<Initialization> foreign = new ArrayList<Initialization>();
+
+		// Initialize the external resources before any of them is injected
+		initializeNestedResources(context, foreign);
+
+		inject(context, object);
+
+		// Resources initialized concurrently by other threads must be ready before the component
+		// may use them. Our own resources have been notified at this point, so threads cannot
+		// wait for each other.
+		for (Initialization i : foreign) {
+			i.await();
+		}
 	}
-	
+
 	/**
-	 * Helper method for recursively configuring super-classes.
+	 * Inject the external resources into the fields of a component.
 	 *
 	 * @param <T>
 	 *            the component type.
 	 * @param context
 	 *            the context containing the resource bindings.
-	 * @param baseCls
-	 *            the class on which configuration started.
-	 * @param cls
-	 *            the class currently being configured.
 	 * @param object
 	 *            the object being configured.
-	 * @param dependencies
-	 *            the dependencies.
 	 * @throws ResourceInitializationException
 	 *             if required resources could not be bound.
 	 */
-	private static <T> void configure(UimaContext context, Class<?> baseCls, Class<?> cls,
-			T object, Map<String, ExternalResourceDependency> dependencies)
+	private static <T> void inject(UimaContext context, T object)
 			throws ResourceInitializationException {
-		if (cls.getSuperclass() != null) {
-			configure(context, baseCls, cls.getSuperclass(), object, dependencies);
-		}
-		else {
-			// Try to initialize the external resources only once, not for each step of the
-			// class hierarchy of a component.
-			initializeNestedResources(context);
+		List<ResourceField> fields = getResourceFields(object.getClass());
+
+		// If it is a nested resource, the keys are prefixed with the resource name
+		String prefix = null;
+		if (object instanceof ExternalResourceAware) {
+			prefix = ((ExternalResourceAware) object).getResourceName();
 		}
-		
-		for (Field field : cls.getDeclaredFields()) {
-			if (!field.isAnnotationPresent(ExternalResource.class)) {
-				continue;
-			}
 
-			// Get the resource key. If it is a nested resource, also get the prefix.
-			String key = getKey(field);
-			if (object instanceof ExternalResourceAware) {
-				String prefix = ((ExternalResourceAware) object).getResourceName();
-				if (prefix != null) {
-					key = prefix + PREFIX_SEPARATOR + key;
-				}
-			}
+		for (ResourceField rf : fields) {
+			String key = prefix != null ? prefix + PREFIX_SEPARATOR + rf.key : rf.key;
 			
 			// Obtain the resource
 			Object value;
@@ -129,53 +171,113 @@ public class ExternalResourceInitializer {
 			}
 
 			// Sanity checks
-			if (value == null && isMandatory(field)) {
+			if (value == null && rf.mandatory) {
 				throw new ResourceInitializationException(new IllegalStateException(
-						"Mandatory resource [" + key + "] is not set on [" + baseCls + "]"));
+						"Mandatory resource [" + key + "] is not set on [" + object.getClass()
+								+ "]"));
 			}
 
 			// Now record the setting and optionally apply it to the given
 			// instance.
 			if (value != null) {
-				field.setAccessible(true);
 				try {
-					field.set(object, value);
+					rf.field.set(object, value);
 				}
 				catch (IllegalAccessException e) {
 					throw new ResourceInitializationException(e);
 				}
-				field.setAccessible(false);
 			}
 		}		
 	}
 	
 	/**
 	 * Scan the context and initialize external resources injected into other external resources.
+	 * Each resource is claimed by the first thread encountering it. Resources claimed by other
+	 * threads are only waited for once the resources claimed by this thread have been injected, so
+	 * threads cannot wait for each other.
 	 * 
 	 * @param aContext the UIMA context.
+	 * @param aForeign collects the resources which are being initialized by other threads.
 	 */
-	private static void initializeNestedResources(UimaContext aContext)
-			throws ResourceInitializationException {
+	private static void initializeNestedResources(UimaContext aContext,
+			List<Initialization> aForeign) throws ResourceInitializationException {
+		expungeCollectedResources();
+
 		List<ExternalResourceAware> awareResources = new ArrayList<ExternalResourceAware>();
+		Map<ResourceKey, Initialization> owned = new LinkedHashMap<ResourceKey, Initialization>();
 		
-		// Initialize the resources - each resource must only be initialized once. We remember
-		// if a resource has already been initialized in a weak hash map, so we automatically
-		// forget about resources that are garbage collected.
+		// Claim the resources - each resource must only be initialized once.
 		for (Object r : getResources(aContext)) {
-			synchronized (initializedResources) {
-				if (r instanceof ExternalResourceAware && !initializedResources.containsKey(r)) {
-					// Already mark the resource as initialized so we do not run into an 
-					// endless recursive loop when initialize() is called again.
-					initializedResources.put(r, INITIALIZED);
-					initialize(aContext, r);
-					awareResources.add((ExternalResourceAware) r);
+			if (!(r instanceof ExternalResourceAware)) {
+				continue;
+			}
+
+			ResourceKey key = new ResourceKey(r, collectedResources);
+			Initialization init = new Initialization();
+			Initialization existing = initializedResources.putIfAbsent(key, init);
+			if (existing == null) {
+				owned.put(key, init);
+				awareResources.add((ExternalResourceAware) r);
+			}
+			else if (existing.owner != ownerToken.get()) {
+				aForeign.add(existing);
+			}
+		}
+
+		Throwable failure = null;
+		try {
+			for (ExternalResourceAware res : awareResources) {
+				inject(aContext, res);
+			}
+			for (Initialization init : owned.values()) {
+				init.configured.countDown();
+			}
+
+			// Nested resources claimed by other threads must be injected before the resources
+			// are notified.
+			for (Initialization init : aForeign) {
+				init.awaitConfigured();
+			}
+			
+			// Notify the resources after everything has been configured
+			for (ExternalResourceAware res : awareResources) {
+				res.afterResourcesInitialized();
+			}
+		}
+		catch (ResourceInitializationException e) {
+			failure = e;
+			throw e;
+		}
+		catch (RuntimeException e) {
+			failure = e;
+			throw e;
+		}
+		catch (Error e) {
+			failure = e;
+			throw e;
+		}
+		finally {
+			for (Entry<ResourceKey, Initialization> e : owned.entrySet()) {
+				Initialization init = e.getValue();
+				if (failure != null) {
+					// Threads waiting for the resource fail as well. Threads coming later try
+					// to initialize the resource again.
+					init.failure = failure;
+					initializedResources.remove(e.getKey(), init);
 				}
+				init.configured.countDown();
+				init.done.countDown();
 			}
 		}
-		
-		// Notify the resources after everything has been configured
-		for (ExternalResourceAware res : awareResources) {
-			res.afterResourcesInitialized();
+	}
+
+	/**
+	 * Remove the resources which have been garbage collected.
+	 */
+	private static void expungeCollectedResources() {
+		Reference<?> ref;
+		while ((ref = collectedResources.poll()) != null) {
+			initializedResources.remove(ref);
 		}
 	}
 	
@@ -198,47 +300,59 @@ public class ExternalResourceInitializer {
 					+ resMgr.getClass() + "]");
 		}
 		
-		Field resourceMapField = null;
+		if (RESOURCE_MAP_FIELD == null) {
+			throw new ResourceInitializationException(new IllegalStateException(
+					"Unable to access the resources of [" + resMgr.getClass() + "]"));
+		}
+		
 		try {
 			// Fetch the list of resources
-			resourceMapField = ReflectionUtil.getField(resMgr, "mResourceMap");
-			resourceMapField.setAccessible(true);			
 			@SuppressWarnings("unchecked")
-			Map<String, Object> resources = (Map<String, Object>) resourceMapField.get(resMgr);
+			Map<String, Object> resources = (Map<String, Object>) RESOURCE_MAP_FIELD.get(resMgr);
 			
 			return resources.values();
 		}
-		catch (SecurityException e) {
-			throw new ResourceInitializationException(e);
-		}
-		catch (NoSuchFieldException e) {
-			throw new ResourceInitializationException(e);
-		}
 		catch (IllegalArgumentException e) {
 			throw new ResourceInitializationException(e);
 		}
 		catch (IllegalAccessException e) {
 			throw new ResourceInitializationException(e);
 		}
-		finally {
-			if (resourceMapField != null) {
-				resourceMapField.setAccessible(false);
-			}
-		}
 	}
 	
 	public static <T> Map<String, ExternalResourceDependency> getResourceDeclarations(Class<?> cls)
 			throws ResourceInitializationException {
 		Map<String, ExternalResourceDependency> deps = new HashMap<String, ExternalResourceDependency>();
-		getResourceDeclarations(cls, cls, deps);
+		for (ResourceField rf : getResourceFields(cls)) {
+			deps.put(rf.key, createExternalResourceDependency(rf.key, rf.api, !rf.mandatory));
+		}
 		return deps;
 	}
 
-	private static <T> void getResourceDeclarations(Class<?> baseCls, Class<?> cls,
-			Map<String, ExternalResourceDependency> dependencies)
+	/**
+	 * Get the fields of the given class and its super-classes into which external resources are
+	 * injected. The fields are only looked up once per class.
+	 */
+	private static List<ResourceField> getResourceFields(Class<?> cls)
 			throws ResourceInitializationException {
+		synchronized (resourceFields) {
+			SoftReference<List<ResourceField>> ref = resourceFields.get(cls);
+			List<ResourceField> fields = ref != null ? ref.get() : null;
+			if (fields == null) {
+				fields = new ArrayList<ResourceField>();
+				getResourceFields(cls, fields, new HashSet<String>());
+				// The fields refer to the class, so they must only be held softly. Otherwise the
+				// class could never be removed from the cache.
+				resourceFields.put(cls, new SoftReference<List<ResourceField>>(fields));
+			}
+			return fields;
+		}
+	}
+
+	private static void getResourceFields(Class<?> cls, List<ResourceField> fields,
+			Set<String> keys) throws ResourceInitializationException {
 		if (cls.getSuperclass() != null) {
-			getResourceDeclarations(baseCls, cls.getSuperclass(), dependencies);
+			getResourceFields(cls.getSuperclass(), fields, keys);
 		}
 
 		for (Field field : cls.getDeclaredFields()) {
@@ -246,15 +360,12 @@ public class ExternalResourceInitializer {
 				continue;
 			}
 
-			if (dependencies.containsKey(getKey(field))) {
+			if (!keys.add(getKey(field))) {
 				throw new ResourceInitializationException(new IllegalStateException("Key ["
 						+ getKey(field) + "] may only be used on a single field."));
 			}
 
-			dependencies.put(
-					getKey(field),
-					createExternalResourceDependency(getKey(field), getApi(field),
-							!isMandatory(field)));
+			fields.add(new ResourceField(field));
 		}
 	}
 
@@ -315,4 +426,91 @@ public class ExternalResourceInitializer {
 		}
 		return api;
 	}
+
+	/**
+	 * A field into which an external resource is injected.
+	 */
+	private static final class ResourceField {
+		final Field field;
+		final String key;
+		final Class<? extends Resource> api;
+		final boolean mandatory;
+
+		ResourceField(Field aField) {
+			field = aField;
+			field.setAccessible(true);
+			key = getKey(aField);
+			api = getApi(aField);
+			mandatory = isMandatory(aField);
+		}
+	}
+
+	/**
+	 * Identifies a resource by identity without preventing it from being garbage collected.
+	 */
+	private static final class ResourceKey extends WeakReference<Object> {
+		private final int hash;
+
+		ResourceKey(Object aResource, ReferenceQueue<Object> aQueue) {
+			super(aResource, aQueue);
+			hash = System.identityHashCode(aResource);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object aOther) {
+			if (this == aOther) {
+				return true;
+			}
+			if (!(aOther instanceof ResourceKey)) {
+				return false;
+			}
+			Object resource = get();
+			return resource != null && resource == ((ResourceKey) aOther).get();
+		}
+	}
+
+	/**
+	 * The initialization of a resource by a particular thread.
+	 */
+	private static final class Initialization {
+		final Object owner = ownerToken.get();
+		/**
+		 * Set if the owner failed to initialize the resource.
+		 */
+		volatile Throwable failure;
+		/**
+		 * Released once the external resources have been injected into the resource.
+		 */
+		final CountDownLatch configured = new CountDownLatch(1);
+		/**
+		 * Released once the resource has been notified.
+		 */
+		final CountDownLatch done = new CountDownLatch(1);
+
+		void awaitConfigured() throws ResourceInitializationException {
+			await(configured);
+		}
+
+		void await() throws ResourceInitializationException {
+			await(done);
+		}
+
+		private void await(CountDownLatch aLatch) throws ResourceInitializationException {
+			try {
+				aLatch.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ResourceInitializationException(e);
+			}
+			if (failure != null) {
+				throw new ResourceInitializationException(failure);
+			}
+		}
+	}
 }
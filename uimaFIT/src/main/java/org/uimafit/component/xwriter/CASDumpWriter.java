@@ -18,14 +18,19 @@
  */
 package org.uimafit.component.xwriter;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -33,10 +38,23 @@ import java.util.regex.Pattern;
 import org.apache.commons.io.IOUtils;
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.BooleanArrayFS;
+import org.apache.uima.cas.ByteArrayFS;
 import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.DoubleArrayFS;
 import org.apache.uima.cas.FSIterator;
+import org.apache.uima.cas.Feature;
 import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.cas.FloatArrayFS;
+import org.apache.uima.cas.IntArrayFS;
+import org.apache.uima.cas.LongArrayFS;
+import org.apache.uima.cas.ShortArrayFS;
+import org.apache.uima.cas.SofaFS;
+import org.apache.uima.cas.StringArrayFS;
 import org.apache.uima.cas.Type;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.cas.impl.AnnotationImpl;
+import org.apache.uima.cas.impl.LowLevelCAS;
 import org.apache.uima.cas.text.AnnotationFS;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.springframework.util.DigestUtils;
@@ -47,6 +65,10 @@ import org.uimafit.descriptor.ConfigurationParameter;
  * Dumps CAS content to a text file. This is useful when setting up test cases which contain a
  * reference output to which an actually produced CAS is compared. The format produced by this
  * component is more easily comparable than a XML or XMI format produced by {@link XWriter}.
+ * <p>
+ * The feature structures are printed in the format of {@link FeatureStructure#toString()}, but
+ * they are written directly to the output while walking their features. The filters are
+ * evaluated once per type and feature.
  *
  * @author Richard Eckart de Castilho
  */
@@ -78,8 +100,11 @@ public class CASDumpWriter extends CasConsumer_ImplBase {
 	private boolean writeDocumentMetaData;
 
 	/**
-	 * Include/exclude features according to the following patterns. Mind that the patterns do not
-	 * actually match feature names but lines produced by {@link FeatureStructure#toString()}.
+	 * Include/exclude features according to the following patterns. The patterns are matched
+	 * against the lines of the dump without the feature values, i.e. against the indented feature
+	 * name followed by a colon and a space (e.g. {@code "   begin: "}) or against the type name
+	 * heading a feature structure. They are evaluated only once per feature and indentation level,
+	 * so they cannot match feature values. If several patterns match, the last one wins.
 	 */
 	public static final String PARAM_FEATURE_PATTERNS = "FeaturePatterns";
 	@ConfigurationParameter(name = PARAM_FEATURE_PATTERNS, mandatory = true, defaultValue = {
@@ -98,6 +123,23 @@ public class CASDumpWriter extends CasConsumer_ImplBase {
 	private PrintWriter out;
 	private int iCas;
 
+	/**
+	 * The type system for which {@link #typeInfos} have been collected.
+	 */
+	private TypeSystem typeSystem;
+	private final Map<Type, TypeInfo> typeInfos = new HashMap<Type, TypeInfo>();
+	private final LineFilter arrayLengthFilter = new LineFilter("Array length: ");
+	private final LineFilter arrayElementsFilter = new LineFilter("Array elements: [");
+
+	private LowLevelCAS llCas;
+
+	/**
+	 * Feature structures reachable from the feature structure being printed, mapped to their
+	 * label if they are reachable more than once. Same as in {@link FeatureStructure#toString()}.
+	 */
+	private final Map<Integer, String> labels = new HashMap<Integer, String>();
+	private final Set<Integer> printed = new HashSet<Integer>();
+
 	@Override
 	public void initialize(UimaContext context) throws ResourceInitializationException {
 		super.initialize(context);
@@ -105,14 +147,14 @@ public class CASDumpWriter extends CasConsumer_ImplBase {
 		try {
 			if (out == null) {
 				if ("-".equals(outFile.getName())) {
-					out = new PrintWriter(System.out);
+					out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out)));
 				}
 				else {
 					if (outFile.getParentFile() != null) {
 					outFile.getParentFile().mkdirs();
 					}
-					out = new PrintWriter(
-							new OutputStreamWriter(new FileOutputStream(outFile), "UTF-8"));
+					out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+							new FileOutputStream(outFile), "UTF-8")));
 				}
 			}
 		}
@@ -126,6 +168,12 @@ public class CASDumpWriter extends CasConsumer_ImplBase {
 
 	@Override
 	public void process(CAS aCAS) throws AnalysisEngineProcessException {
+		if (aCAS.getTypeSystem() != typeSystem) {
+			typeSystem = aCAS.getTypeSystem();
+			typeInfos.clear();
+		}
+		llCas = aCAS.getLowLevelCAS();
+
 		out.println("======== CAS " + iCas + " begin ==================================");
 		out.println();
 
@@ -158,7 +206,7 @@ public class CASDumpWriter extends CasConsumer_ImplBase {
 			return;
 		}
 
-		processFeatureStructure(aCAS.getDocumentAnnotation());
+		processFeatureStructure(aCAS.getDocumentAnnotation(), null);
 	}
 
 	private void processDocumentText(CAS aCAS) {
@@ -168,37 +216,298 @@ public class CASDumpWriter extends CasConsumer_ImplBase {
 	}
 
 	private void processFeatureStructures(CAS aCAS) {
-		Set<String> typesToPrint = getTypes(aCAS);
+		Type documentAnnotationType = aCAS.getDocumentAnnotation().getType();
+		String text = aCAS.getDocumentText();
 		FSIterator<AnnotationFS> annotationIterator = aCAS.getAnnotationIndex().iterator();
 		while (annotationIterator.hasNext()) {
 			AnnotationFS annotation = annotationIterator.next();
-			if (!typesToPrint.contains(annotation.getType().getName())) {
+			Type type = annotation.getType();
+			if (type.equals(documentAnnotationType) || !getTypeInfo(type).dump) {
 				continue;
 			}
-			try {
-				out.println("[" + annotation.getCoveredText() + "]");
+			int begin = annotation.getBegin();
+			int end = annotation.getEnd();
+			boolean valid = text != null && begin >= 0 && end <= text.length() && begin <= end;
+			if (text == null) {
+				out.println("[null]");
 			}
-			catch (IndexOutOfBoundsException e) {
+			else if (!valid) {
 				out.println("<OFFSETS OUT OF BOUNDS>");
 			}
-			processFeatureStructure(annotation);
+			else {
+				out.print('[');
+				out.write(text, begin, end - begin);
+				out.println(']');
+			}
+			// Annotations without a JCas class include the covered text in their type line
+			processFeatureStructure(annotation, valid && annotation instanceof AnnotationImpl ? text
+					: null);
 		}
 	}
 
-	private void processFeatureStructure(FeatureStructure aFS) {
-		String meta = aFS.toString();
-		for (String line : meta.split("\n")) {
-			boolean print = false;
-			for (InExPattern p : featurePatterns) {
-				p.matchter.reset(line);
-				if (p.matchter.matches()) {
-					print = p.includeInOutput;
+	/**
+	 * @param aText
+	 *            if not {@code null}, the text covered by the annotation is appended to the type
+	 *            line.
+	 */
+	private void processFeatureStructure(FeatureStructure aFS, String aText) {
+		labels.clear();
+		printed.clear();
+		TypeInfo info = getTypeInfo(aFS.getType());
+		if (info.labelsPossible) {
+			collectReferences(aFS, new int[1]);
+		}
+
+		String label = labels.get(llCas.ll_getFSRef(aFS));
+		boolean print = label == null ? info.header : include(label + " " + info.shortName);
+		printFeatureStructure(aFS, 0, print, aText);
+	}
+
+	/**
+	 * Find the feature structures reachable more than once and label them in the same order as
+	 * {@link FeatureStructure#toString()} does.
+	 */
+	private void collectReferences(FeatureStructure aFS, int[] aCount) {
+		Integer ref = llCas.ll_getFSRef(aFS);
+		if (labels.containsKey(ref)) {
+			if (labels.get(ref) == null) {
+				labels.put(ref, "#" + aCount[0]++);
+			}
+			return;
+		}
+		labels.put(ref, null);
+
+		for (FeatureInfo f : getTypeInfo(aFS.getType()).features) {
+			if (f.kind == FeatureInfo.FS || f.kind == FeatureInfo.SOFA) {
+				FeatureStructure value = aFS.getFeatureValue(f.feature);
+				if (value != null) {
+					collectReferences(value, aCount);
 				}
 			}
+		}
+	}
+
+	/**
+	 * Print a feature structure, starting with its type name which continues the current line.
+	 * 
+	 * @param aIndent
+	 *            the indentation of the current line.
+	 * @param aPrint
+	 *            whether the current line is printed.
+	 * @param aText
+	 *            the document text if the covered text is to be appended to the type name.
+	 */
+	private void printFeatureStructure(FeatureStructure aFS, int aIndent, boolean aPrint,
+			String aText) {
+		if (!labels.isEmpty()) {
+			int ref = llCas.ll_getFSRef(aFS);
+			String label = labels.get(ref);
+			if (label != null) {
+				if (!printed.add(ref)) {
+					// Already printed, only refer to it
+					if (aPrint) {
+						out.println(label);
+					}
+					return;
+				}
+				if (aPrint) {
+					out.print(label);
+					out.print(' ');
+				}
+			}
+		}
+
+		TypeInfo info = getTypeInfo(aFS.getType());
+		if (aPrint) {
+			out.print(info.shortName);
+			if (aText != null) {
+				AnnotationFS annotation = (AnnotationFS) aFS;
+				out.print(" \"");
+				out.write(aText, annotation.getBegin(), annotation.getEnd() - annotation.getBegin());
+				out.print('"');
+			}
+			out.println();
+		}
+
+		int indent = aIndent + INDENT;
+		if (info.typeClass != LowLevelCAS.TYPE_CLASS_FS) {
+			printArray(aFS, info.typeClass, indent);
+		}
+
+		for (FeatureInfo f : info.features) {
+			boolean print = f.filter.include(indent);
 			if (print) {
-				out.println(line);
+				printIndent(indent);
+				out.print(f.filter.text);
+			}
+			switch (f.kind) {
+			case FeatureInfo.STRING: {
+				if (print) {
+					String value = aFS.getStringValue(f.feature);
+					if (value == null) {
+						out.println("<null>");
+					}
+					else {
+						out.print('"');
+						out.print(value);
+						out.println('"');
+					}
+				}
+				break;
+			}
+			case FeatureInfo.SOFA: {
+				if (print) {
+					FeatureStructure value = aFS.getFeatureValue(f.feature);
+					out.println(value == null ? "<null>" : ((SofaFS) value).getSofaID());
+				}
+				break;
+			}
+			case FeatureInfo.FS: {
+				FeatureStructure value = aFS.getFeatureValue(f.feature);
+				if (value != null) {
+					printFeatureStructure(value, indent, print, null);
+				}
+				else if (print) {
+					out.println("<null>");
+				}
+				break;
+			}
+			default:
+				if (print) {
+					printPrimitive(aFS, f);
+				}
+			}
+		}
+	}
+
+	private void printPrimitive(FeatureStructure aFS, FeatureInfo aFeature) {
+		switch (aFeature.kind) {
+		case LowLevelCAS.TYPE_CLASS_INT:
+			out.println(aFS.getIntValue(aFeature.feature));
+			break;
+		case LowLevelCAS.TYPE_CLASS_FLOAT:
+			out.println(aFS.getFloatValue(aFeature.feature));
+			break;
+		case LowLevelCAS.TYPE_CLASS_BOOLEAN:
+			out.println(aFS.getBooleanValue(aFeature.feature));
+			break;
+		case LowLevelCAS.TYPE_CLASS_BYTE:
+			out.println(aFS.getByteValue(aFeature.feature));
+			break;
+		case LowLevelCAS.TYPE_CLASS_SHORT:
+			out.println(aFS.getShortValue(aFeature.feature));
+			break;
+		case LowLevelCAS.TYPE_CLASS_LONG:
+			out.println(aFS.getLongValue(aFeature.feature));
+			break;
+		case LowLevelCAS.TYPE_CLASS_DOUBLE:
+			out.println(aFS.getDoubleValue(aFeature.feature));
+			break;
+		default:
+			out.println(aFS.getFeatureValueAsString(aFeature.feature));
+		}
+	}
+
+	private void printArray(FeatureStructure aFS, int aTypeClass, int aIndent) {
+		int size;
+		switch (aTypeClass) {
+		case LowLevelCAS.TYPE_CLASS_STRINGARRAY:
+		case LowLevelCAS.TYPE_CLASS_INTARRAY:
+		case LowLevelCAS.TYPE_CLASS_FLOATARRAY:
+		case LowLevelCAS.TYPE_CLASS_BOOLEANARRAY:
+		case LowLevelCAS.TYPE_CLASS_BYTEARRAY:
+		case LowLevelCAS.TYPE_CLASS_SHORTARRAY:
+		case LowLevelCAS.TYPE_CLASS_LONGARRAY:
+		case LowLevelCAS.TYPE_CLASS_DOUBLEARRAY:
+			size = llCas.ll_getArraySize(llCas.ll_getFSRef(aFS));
+			break;
+		default:
+			// FS arrays are not printed by FeatureStructure.toString() either
+			return;
+		}
+
+		if (arrayLengthFilter.include(aIndent)) {
+			printIndent(aIndent);
+			out.print(arrayLengthFilter.text);
+			out.println(size);
+		}
+		if (size == 0 || !arrayElementsFilter.include(aIndent)) {
+			return;
+		}
+
+		printIndent(aIndent);
+		out.print(arrayElementsFilter.text);
+		switch (aTypeClass) {
+		case LowLevelCAS.TYPE_CLASS_STRINGARRAY: {
+			StringArrayFS array = (StringArrayFS) aFS;
+			for (int i = 0; i < size; i++) {
+				out.print(i > 0 ? ", \"" : "\"");
+				out.print(array.get(i));
+				out.print('"');
+			}
+			break;
+		}
+		case LowLevelCAS.TYPE_CLASS_INTARRAY: {
+			IntArrayFS array = (IntArrayFS) aFS;
+			for (int i = 0; i < size; i++) {
+				printSeparator(i);
+				out.print(array.get(i));
+			}
+			break;
+		}
+		case LowLevelCAS.TYPE_CLASS_FLOATARRAY: {
+			FloatArrayFS array = (FloatArrayFS) aFS;
+			for (int i = 0; i < size; i++) {
+				printSeparator(i);
+				out.print(array.get(i));
+			}
+			break;
+		}
+		default: {
+			// Only the first elements of these arrays are printed
+			int n = Math.min(size, MAX_ARRAY_ELEMENTS);
+			for (int i = 0; i < n; i++) {
+				printSeparator(i);
+				printArrayElement(aFS, aTypeClass, i);
+			}
+			if (size > n) {
+				out.print(", ...");
 			}
 		}
+		}
+		out.println(']');
+	}
+
+	private void printArrayElement(FeatureStructure aFS, int aTypeClass, int aIndex) {
+		switch (aTypeClass) {
+		case LowLevelCAS.TYPE_CLASS_BOOLEANARRAY:
+			// Boolean arrays are printed as bytes
+			out.print(((BooleanArrayFS) aFS).get(aIndex) ? 1 : 0);
+			break;
+		case LowLevelCAS.TYPE_CLASS_BYTEARRAY:
+			out.print(((ByteArrayFS) aFS).get(aIndex));
+			break;
+		case LowLevelCAS.TYPE_CLASS_SHORTARRAY:
+			out.print(((ShortArrayFS) aFS).get(aIndex));
+			break;
+		case LowLevelCAS.TYPE_CLASS_LONGARRAY:
+			out.print(((LongArrayFS) aFS).get(aIndex));
+			break;
+		default:
+			out.print(((DoubleArrayFS) aFS).get(aIndex));
+		}
+	}
+
+	private void printSeparator(int aIndex) {
+		if (aIndex > 0) {
+			out.print(", ");
+		}
+	}
+
+	private void printIndent(int aIndent) {
+		for (int i = 0; i < aIndent; i++) {
+			out.print(' ');
+		}
 	}
 
 	private void processView(CAS aCAS) {
@@ -265,30 +574,150 @@ public class CASDumpWriter extends CasConsumer_ImplBase {
 		return patterns;
 	}
 
-	private Set<String> getTypes(CAS cas) {
-		Set<String> types = new HashSet<String>();
-		Iterator<Type> typeIt = cas.getTypeSystem().getTypeIterator();
-		nextType: while (typeIt.hasNext()) {
-			Type type = typeIt.next();
+	/**
+	 * Check whether a line is included in the output according to the feature patterns.
+	 */
+	private boolean include(String aLine) {
+		boolean print = false;
+		for (InExPattern p : featurePatterns) {
+			p.matchter.reset(aLine);
+			if (p.matchter.matches()) {
+				print = p.includeInOutput;
+			}
+		}
+		return print;
+	}
 
-			if (type.getName().equals(cas.getDocumentAnnotation().getType().getName())) {
-				continue;
+	private TypeInfo getTypeInfo(Type aType) {
+		TypeInfo info = typeInfos.get(aType);
+		if (info == null) {
+			info = new TypeInfo(aType);
+			typeInfos.put(aType, info);
+		}
+		return info;
+	}
+
+	private static final int INDENT = 3;
+
+	/**
+	 * Number of elements printed for arrays other than string, integer and float arrays.
+	 */
+	private static final int MAX_ARRAY_ELEMENTS = 15;
+
+	/**
+	 * How to print a type. Created once per type.
+	 */
+	private class TypeInfo {
+		final String shortName;
+		final int typeClass;
+		/**
+		 * Whether the type is included by the type patterns.
+		 */
+		final boolean dump;
+		/**
+		 * Whether the type name is included by the feature patterns.
+		 */
+		final boolean header;
+		final FeatureInfo[] features;
+		/**
+		 * Whether feature structures of this type may refer to others which are printed.
+		 */
+		final boolean labelsPossible;
+
+		TypeInfo(Type aType) {
+			shortName = aType.getShortName();
+			typeClass = llCas.ll_getTypeClass(llCas.ll_getTypeSystem().ll_getCodeForType(aType));
+			dump = isDumped(aType);
+			header = include(shortName);
+
+			List<Feature> featureList = aType.getFeatures();
+			List<FeatureInfo> infos = new ArrayList<FeatureInfo>(featureList.size());
+			boolean references = false;
+			for (Feature f : featureList) {
+				FeatureInfo info = new FeatureInfo(f);
+				references |= info.kind == FeatureInfo.FS;
+				infos.add(info);
 			}
+			features = infos.toArray(new FeatureInfo[infos.size()]);
+			// Sofas are printed by their ID, so labels may only be required if there are other
+			// references
+			labelsPossible = references;
+		}
 
+		private boolean isDumped(Type aType) {
+			// The first matching pattern decides
 			for (InExPattern p : typePatterns) {
-				p.matchter.reset(type.getName());
+				p.matchter.reset(aType.getName());
 				if (p.matchter.matches()) {
-					if (p.includeInOutput) {
-						types.add(type.getName());
-					}
-					else {
-						types.remove(type.getName());
-					}
-					continue nextType;
+					return p.includeInOutput;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * How to print a feature. Created once per feature.
+	 */
+	private class FeatureInfo {
+		static final int STRING = -1;
+		static final int SOFA = -2;
+		static final int FS = -3;
+
+		final Feature feature;
+		final LineFilter filter;
+		/**
+		 * One of {@link #STRING}, {@link #SOFA}, {@link #FS} or the primitive type class.
+		 */
+		final int kind;
+
+		FeatureInfo(Feature aFeature) {
+			feature = aFeature;
+			filter = new LineFilter(aFeature.getShortName() + ": ");
+
+			Type range = aFeature.getRange();
+			Type parent = typeSystem.getParent(range);
+			if (CAS.TYPE_NAME_STRING.equals(range.getName())
+					|| (parent != null && CAS.TYPE_NAME_STRING.equals(parent.getName()))) {
+				kind = STRING;
+			}
+			else if (!range.isPrimitive()) {
+				kind = CAS.TYPE_NAME_SOFA.equals(range.getName()) ? SOFA : FS;
+			}
+			else {
+				kind = llCas.ll_getTypeClass(llCas.ll_getTypeSystem().ll_getCodeForType(range));
+			}
+		}
+	}
+
+	/**
+	 * Decides whether lines starting with a given text are printed. The decision is made once per
+	 * indentation.
+	 */
+	private class LineFilter {
+		final String text;
+		private Boolean[] included = new Boolean[0];
+
+		LineFilter(String aText) {
+			text = aText;
+		}
+
+		boolean include(int aIndent) {
+			if (aIndent >= included.length) {
+				Boolean[] newIncluded = new Boolean[aIndent + 1];
+				System.arraycopy(included, 0, newIncluded, 0, included.length);
+				included = newIncluded;
+			}
+			if (included[aIndent] == null) {
+				StringBuilder line = new StringBuilder();
+				for (int i = 0; i < aIndent; i++) {
+					line.append(' ');
 				}
+				line.append(text);
+				included[aIndent] = CASDumpWriter.this.include(line.toString());
 			}
+			return included[aIndent];
 		}
-		return types;
 	}
 
 	private static class InExPattern {
@@ -0,0 +1,140 @@
+/*
+ Copyright 2012
+ Ubiquitous Knowledge Processing (UKP) Lab
+ Technische Universitaet Darmstadt
+ All rights reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.uimafit.component.xwriter;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Appends serialized CASes to a sequence of segment files. Each segment file
+ * ({@code segment-NNNNN.seg}) consists of records, each made up of the entry name (as written by
+ * {@link DataOutputStream#writeUTF(String)}), the length of the data as a 4 byte integer and the
+ * data itself. Once a segment exceeds the configured size, it is closed and the next one is
+ * started. For each segment, an index file ({@code segment-NNNNN.idx}) lists one line per record
+ * with the offset of the data in the segment file, the length of the data and the entry name,
+ * separated by tabs.
+ * 
+ * @author Richard Eckart de Castilho
+ */
+class SegmentWriter {
+	static final String SEGMENT_SUFFIX = ".seg";
+
+	static final String INDEX_SUFFIX = ".idx";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File directory;
+
+	private final long segmentSize;
+
+	private int segment = 0;
+
+	private OutputStream data;
+
+	private Writer index;
+
+	private long offset;
+
+	/**
+	 * @param aDirectory
+	 *            the directory to write the segments to.
+	 * @param aSegmentSize
+	 *            the size in bytes after which a new segment is started.
+	 */
+	SegmentWriter(File aDirectory, long aSegmentSize) {
+		directory = aDirectory;
+		segmentSize = aSegmentSize;
+	}
+
+	/**
+	 * Get the name of the segment file with the given number. The index file has the same name
+	 * with {@link #INDEX_SUFFIX} instead of {@link #SEGMENT_SUFFIX}.
+	 */
+	static String getSegmentName(int aSegment) {
+		return String.format("segment-%05d", aSegment);
+	}
+
+	/**
+	 * Append an entry to the current segment.
+	 */
+	synchronized void append(String aName, ByteArrayOutputStream aData) throws IOException {
+		if (data == null) {
+			open();
+		}
+
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		DataOutputStream headerOut = new DataOutputStream(header);
+		headerOut.writeUTF(aName);
+		headerOut.writeInt(aData.size());
+		header.writeTo(data);
+		offset += header.size();
+		long dataOffset = offset;
+
+		aData.writeTo(data);
+		offset += aData.size();
+
+		// The record is only listed in the index once its data has been written
+		index.write(dataOffset + "\t" + aData.size() + "\t" + aName + "\n");
+
+		if (offset >= segmentSize) {
+			close();
+		}
+	}
+
+	/**
+	 * Close the current segment. The next call to {@link #append} starts a new segment.
+	 */
+	synchronized void close() throws IOException {
+		if (data == null) {
+			return;
+		}
+		try {
+			data.close();
+		}
+		finally {
+			data = null;
+			index.close();
+			index = null;
+			segment++;
+		}
+	}
+
+	private void open() throws IOException {
+		String name = getSegmentName(segment);
+		data = new BufferedOutputStream(new FileOutputStream(new File(directory, name
+				+ SEGMENT_SUFFIX)), BUFFER_SIZE);
+		try {
+			index = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(
+					new File(directory, name + INDEX_SUFFIX))), "UTF-8");
+		}
+		catch (IOException e) {
+			data.close();
+			data = null;
+			throw e;
+		}
+		offset = 0;
+	}
+}
@@ -0,0 +1,350 @@
+/*
+ Copyright 2012
+ Ubiquitous Knowledge Processing (UKP) Lab
+ Technische Universitaet Darmstadt
+ All rights reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.uimafit.component.xwriter;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.uima.UimaContext;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.impl.Serialization;
+import org.apache.uima.cas.impl.XCASDeserializer;
+import org.apache.uima.cas.impl.XmiCasDeserializer;
+import org.apache.uima.collection.CollectionException;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Progress;
+import org.apache.uima.util.ProgressImpl;
+import org.uimafit.component.CasCollectionReader_ImplBase;
+import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.factory.ConfigurationParameterFactory;
+import org.xml.sax.SAXException;
+
+/**
+ * Reads the CASes written by {@link XWriter}, either from individual files or from segment files.
+ * The format is determined by the file or entry name extension. The data is accessed via
+ * memory-mapped I/O and deserialized directly into the CAS provided to {@link #getNext(CAS)}.
+ * <p>
+ * The collection can be split into shards which are read by separate readers, e.g. in parallel
+ * processes. The entries are ordered by file name and by their offset within segment files and
+ * each shard covers a contiguous range of them. Segment entries are located through the index
+ * files written alongside the segments, so no data needs to be read to create the shards.
+ * 
+ * @author Richard Eckart de Castilho
+ */
+public class XReader extends CasCollectionReader_ImplBase {
+	/**
+	 * The parameter name for the configuration parameter that specifies the directory containing
+	 * the files written by {@link XWriter}.
+	 */
+	public static final String PARAM_INPUT_DIRECTORY_NAME = ConfigurationParameterFactory
+			.createConfigurationParameterName(XReader.class, "inputDirectoryName");
+	@ConfigurationParameter(mandatory = true, description = "the directory containing the files written by XWriter.")
+	private String inputDirectoryName;
+
+	/**
+	 * The parameter name for the configuration parameter that specifies the number of shards the
+	 * collection is split into.
+	 */
+	public static final String PARAM_SHARD_COUNT = ConfigurationParameterFactory
+			.createConfigurationParameterName(XReader.class, "shardCount");
+	@ConfigurationParameter(mandatory = true, defaultValue = "1", description = "the number of shards the collection is split into.")
+	private int shardCount;
+
+	/**
+	 * The parameter name for the configuration parameter that specifies the shard read by this
+	 * reader.
+	 */
+	public static final String PARAM_SHARD = ConfigurationParameterFactory
+			.createConfigurationParameterName(XReader.class, "shard");
+	@ConfigurationParameter(mandatory = true, defaultValue = "0", description = "the shard read by this reader, counting from 0.")
+	private int shard;
+
+	private List<Entry> entries;
+
+	private int current;
+
+	private File mappedFile;
+
+	// Declared as ByteBuffer and sliced via Buffer, so the bytecode does not refer to the
+	// covariant overrides added in Java 9 when compiled on a newer JDK.
+	private ByteBuffer mapped;
+
+	@Override
+	public void initialize(UimaContext context) throws ResourceInitializationException {
+		super.initialize(context);
+
+		if (shardCount < 1 || shard < 0 || shard >= shardCount) {
+			throw new ResourceInitializationException(String.format(
+					"parameter '%1$s' must be between 0 and '%2$s' - 1.", PARAM_SHARD,
+					PARAM_SHARD_COUNT), null);
+		}
+
+		File inputDirectory = new File(inputDirectoryName);
+		File[] files = inputDirectory.listFiles();
+		if (files == null) {
+			throw new ResourceInitializationException(new IOException("[" + inputDirectory
+					+ "] is not a directory"));
+		}
+		Arrays.sort(files);
+
+		List<Entry> all = new ArrayList<Entry>();
+		try {
+			for (File file : files) {
+				if (file.getName().endsWith(SegmentWriter.SEGMENT_SUFFIX)) {
+					readSegmentIndex(file, all);
+				}
+				else if (isCas(file.getName())) {
+					all.add(new Entry(file, file.getName(), 0, file.length()));
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new ResourceInitializationException(e);
+		}
+
+		int n = all.size();
+		entries = all.subList((int) ((long) shard * n / shardCount),
+				(int) ((long) (shard + 1) * n / shardCount));
+		current = 0;
+	}
+
+	public boolean hasNext() throws IOException, CollectionException {
+		return current < entries.size();
+	}
+
+	public void getNext(CAS aCAS) throws IOException, CollectionException {
+		Entry entry = entries.get(current);
+		current++;
+
+		InputStream in = new ByteBufferInputStream(map(entry));
+		if (entry.name.endsWith(".gz")) {
+			in = new GZIPInputStream(in);
+		}
+		else if (entry.name.endsWith(".zz")) {
+			in = new InflaterInputStream(in);
+		}
+
+		String name = getCasName(entry.name);
+		try {
+			if (name.endsWith(".xmi")) {
+				XmiCasDeserializer.deserialize(in, aCAS);
+			}
+			else if (name.endsWith(".xcas")) {
+				XCASDeserializer.deserialize(in, aCAS);
+			}
+			else {
+				Serialization.deserializeCAS(aCAS, in);
+			}
+		}
+		catch (SAXException e) {
+			throw new CollectionException(e);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	public Progress[] getProgress() {
+		return new Progress[] { new ProgressImpl(current, entries.size(), Progress.ENTITIES) };
+	}
+
+	@Override
+	public void close() throws IOException {
+		mappedFile = null;
+		mapped = null;
+	}
+
+	/**
+	 * Get the data of an entry. Files are mapped as a whole and the mapping is kept while further
+	 * entries of the same file are read. Only files too large to be mapped at once are mapped per
+	 * entry.
+	 */
+	private ByteBuffer map(Entry aEntry) throws IOException, CollectionException {
+		if (!aEntry.file.equals(mappedFile)) {
+			mappedFile = null;
+			mapped = null;
+			RandomAccessFile raf = new RandomAccessFile(aEntry.file, "r");
+			try {
+				long length = raf.length();
+				checkBounds(aEntry, length);
+				if (length > Integer.MAX_VALUE) {
+					return raf.getChannel().map(MapMode.READ_ONLY, aEntry.offset, aEntry.length);
+				}
+				mapped = raf.getChannel().map(MapMode.READ_ONLY, 0, length);
+				mappedFile = aEntry.file;
+			}
+			finally {
+				raf.close();
+			}
+		}
+		else {
+			checkBounds(aEntry, mapped.capacity());
+		}
+
+		ByteBuffer buffer = mapped.duplicate();
+		((Buffer) buffer).position((int) aEntry.offset);
+		((Buffer) buffer).limit((int) (aEntry.offset + aEntry.length));
+		return buffer;
+	}
+
+	private static void checkBounds(Entry aEntry, long aFileLength) throws CollectionException {
+		if (aEntry.offset + aEntry.length > aFileLength) {
+			throw new CollectionException(new IllegalStateException("Entry [" + aEntry.name
+					+ "] ends at " + (aEntry.offset + aEntry.length) + " but ["
+					+ aEntry.file + "] has only " + aFileLength + " bytes - truncated segment?"));
+		}
+	}
+
+	/**
+	 * Add the entries of a segment. The entries are taken from the index file if present,
+	 * otherwise the record headers in the segment are scanned. A record which was only partially
+	 * written, e.g. because the writer was interrupted, is listed if its header is complete and
+	 * reported by {@link #getNext(CAS)}. An incomplete last line of the index file is ignored.
+	 */
+	private static void readSegmentIndex(File aSegment, List<Entry> aEntries) throws IOException {
+		String name = aSegment.getName();
+		File index = new File(aSegment.getParentFile(), name.substring(0, name.length()
+				- SegmentWriter.SEGMENT_SUFFIX.length())
+				+ SegmentWriter.INDEX_SUFFIX);
+
+		if (index.exists()) {
+			String content = FileUtils.readFileToString(index, "UTF-8");
+			String[] lines = content.split("\n", -1);
+			// The last element is empty if the index is complete, otherwise it is a partial line
+			for (int i = 0; i < lines.length - 1; i++) {
+				if (lines[i].length() == 0) {
+					continue;
+				}
+				aEntries.add(parseIndexLine(aSegment, index, lines[i]));
+			}
+			return;
+		}
+
+		CountingInputStream counter = new CountingInputStream(new BufferedInputStream(
+				new FileInputStream(aSegment)));
+		DataInputStream in = new DataInputStream(counter);
+		try {
+			long end = aSegment.length();
+			while (counter.getByteCount() < end) {
+				String entryName = in.readUTF();
+				int length = in.readInt();
+				aEntries.add(new Entry(aSegment, entryName, counter.getByteCount(), length));
+				IOUtils.skipFully(in, length);
+			}
+		}
+		catch (EOFException e) {
+			// Truncated segment - the entries up to here are listed
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	private static Entry parseIndexLine(File aSegment, File aIndex, String aLine)
+			throws IOException {
+		String[] fields = aLine.split("\t", 3);
+		if (fields.length == 3) {
+			try {
+				return new Entry(aSegment, fields[2], Long.parseLong(fields[0]),
+						Long.parseLong(fields[1]));
+			}
+			catch (NumberFormatException e) {
+				// Reported below
+			}
+		}
+		throw new IOException("Invalid entry [" + aLine + "] in index [" + aIndex + "]");
+	}
+
+	/**
+	 * Strip the compression extension from a name.
+	 */
+	private static String getCasName(String aName) {
+		if (aName.endsWith(".gz") || aName.endsWith(".zz")) {
+			return aName.substring(0, aName.length() - 3);
+		}
+		return aName;
+	}
+
+	private static boolean isCas(String aName) {
+		String name = getCasName(aName);
+		return name.endsWith(".xmi") || name.endsWith(".xcas") || name.endsWith(".bin");
+	}
+
+	private static class Entry {
+		final File file;
+
+		final String name;
+
+		final long offset;
+
+		final long length;
+
+		Entry(File aFile, String aName, long aOffset, long aLength) {
+			file = aFile;
+			name = aName;
+			offset = aOffset;
+			length = aLength;
+		}
+	}
+
+	private static class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer aBuffer) {
+			buffer = aBuffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] aBytes, int aOffset, int aLength) {
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int n = Math.min(aLength, buffer.remaining());
+			buffer.get(aBytes, aOffset, n);
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+}
@@ -17,17 +17,31 @@
 
 package org.uimafit.component.xwriter;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.uima.UimaContext;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.impl.Serialization;
 import org.apache.uima.cas.impl.XCASSerializer;
 import org.apache.uima.cas.impl.XmiCasSerializer;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Level;
 import org.apache.uima.util.XMLSerializer;
 import org.uimafit.component.JCasConsumer_ImplBase;
 import org.uimafit.descriptor.ConfigurationParameter;
@@ -38,7 +52,20 @@ import org.xml.sax.SAXException;
 /**
  * 
  * A simple CAS consumer that generates XCAS (XML representation of the CAS) files in the
- * filesystem.
+ * filesystem. Alternatively, the CASes can be written in the UIMA binary serialization format
+ * which is much more compact and faster to write. Any of the formats can additionally be
+ * compressed.
+ * <p>
+ * If {@link #PARAM_WRITER_THREADS} is set, the files are written in the background. Each CAS is
+ * still serialized into memory on the calling thread, but the analysis can continue while the data
+ * is written to disk. Write errors are reported by a later call to {@code process} or at the
+ * latest by {@code collectionProcessComplete}, which also waits until all files have been written.
+ * It must therefore be called at the end of the processing, otherwise files may be lost.
+ * <p>
+ * If {@link #PARAM_SEGMENT_SIZE} is set, the CASes are not written to individual files but are
+ * appended to segment files of roughly the given size, each accompanied by an index file listing
+ * the offsets of the CASes in the segment. This avoids creating huge numbers of small files. The
+ * current segment is completed by {@code collectionProcessComplete}.
  * 
  * @author Philip Ogren
  */
@@ -60,9 +87,19 @@ public class XWriter extends JCasConsumer_ImplBase {
 	public static final String PARAM_XML_SCHEME_NAME = ConfigurationParameterFactory
 			.createConfigurationParameterName(XWriter.class, "xmlSchemeName");
 	@ConfigurationParameter(mandatory = true, defaultValue = "XMI", description = "specifies the UIMA XML serialization scheme that should be used. "
-			+ "Valid values for this parameter are 'XMI' (default) and 'XCAS'.")
+			+ "Valid values for this parameter are 'XMI' (default), 'XCAS' and 'BINARY'.")
 	private String xmlSchemeName;
 
+	/**
+	 * The parameter name for the configuration parameter that specifies the compression applied
+	 * to the output files.
+	 */
+	public static final String PARAM_COMPRESSION = ConfigurationParameterFactory
+			.createConfigurationParameterName(XWriter.class, "compression");
+	@ConfigurationParameter(mandatory = true, defaultValue = "NONE", description = "specifies the compression applied to the output files. "
+			+ "Valid values for this parameter are 'NONE' (default), 'GZIP' and 'DEFLATE'.")
+	private String compression;
+
 	/**
 	 * The parameter name for the configuration parameter that specifies the name of the class that
 	 * implements the file namer
@@ -72,6 +109,26 @@ public class XWriter extends JCasConsumer_ImplBase {
 	@ConfigurationParameter(mandatory = true, description = "the class name of the XWriterFileNamer implementation to use", defaultValue = "org.uimafit.component.xwriter.IntegerFileNamer")
 	protected String fileNamerClassName;
 
+	/**
+	 * The parameter name for the configuration parameter that specifies the number of threads
+	 * writing files in the background.
+	 */
+	public static final String PARAM_WRITER_THREADS = ConfigurationParameterFactory
+			.createConfigurationParameterName(XWriter.class, "writerThreads");
+	@ConfigurationParameter(mandatory = true, defaultValue = "0", description = "the number of background threads writing the files. "
+			+ "If this is 0 (default), the files are written synchronously.")
+	private int writerThreads;
+
+	/**
+	 * The parameter name for the configuration parameter that specifies the size of the segment
+	 * files.
+	 */
+	public static final String PARAM_SEGMENT_SIZE = ConfigurationParameterFactory
+			.createConfigurationParameterName(XWriter.class, "segmentSize");
+	@ConfigurationParameter(mandatory = true, defaultValue = "0", description = "the size in bytes after which a new segment file is started. "
+			+ "If this is 0 (default), each CAS is written to its own file.")
+	private int segmentSize;
+
 	/**
 	 * The name of the XMI XML scheme. This is a valid value for the parameter
 	 * {@value #PARAM_XML_SCHEME_NAME}
@@ -84,12 +141,51 @@ public class XWriter extends JCasConsumer_ImplBase {
 	 */
 	public static final String XCAS = "XCAS";
 
+	/**
+	 * The name of the UIMA binary serialization scheme. This is a valid value for the parameter
+	 * {@value #PARAM_XML_SCHEME_NAME}. The type system is not stored, so the files can only be
+	 * read into a CAS with the same type system, e.g. using
+	 * {@link Serialization#deserializeCAS(CAS, java.io.InputStream)}.
+	 */
+	public static final String BINARY = "BINARY";
+
+	/**
+	 * No compression. This is a valid value for the parameter {@value #PARAM_COMPRESSION}
+	 */
+	public static final String NONE = "NONE";
+
+	/**
+	 * GZIP compression. This is a valid value for the parameter {@value #PARAM_COMPRESSION}
+	 */
+	public static final String GZIP = "GZIP";
+
+	/**
+	 * ZLIB compression. This is a valid value for the parameter {@value #PARAM_COMPRESSION}
+	 */
+	public static final String DEFLATE = "DEFLATE";
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
 	private File outputDirectory;
 
-	private boolean useXMI = true;
+	private String extension;
 
 	private XWriterFileNamer fileNamer;
 
+	private SegmentWriter segments;
+
+	private ExecutorService writers;
+
+	/**
+	 * Limits the number of serialized CASes held in memory while waiting to be written.
+	 */
+	private Semaphore pending;
+
+	/**
+	 * The first failure of a background writer, re-thrown on the next call to the writer.
+	 */
+	private final AtomicReference<Throwable> writeFailure = new AtomicReference<Throwable>();
+
 	@Override
 	public void initialize(UimaContext context) throws ResourceInitializationException {
 		super.initialize(context);
@@ -100,15 +196,44 @@ public class XWriter extends JCasConsumer_ImplBase {
 		}
 
 		if (xmlSchemeName.equals(XMI)) {
-			useXMI = true;
+			extension = ".xmi";
 		}
 		else if (xmlSchemeName.equals(XCAS)) {
-			useXMI = false;
+			extension = ".xcas";
+		}
+		else if (xmlSchemeName.equals(BINARY)) {
+			extension = ".bin";
 		}
 		else {
 			throw new ResourceInitializationException(String.format(
-					"parameter '%1$s' must be either '%2$s' or '%3$s'.", PARAM_XML_SCHEME_NAME,
-					XMI, XCAS), null);
+					"parameter '%1$s' must be one of '%2$s', '%3$s' or '%4$s'.",
+					PARAM_XML_SCHEME_NAME, XMI, XCAS, BINARY), null);
+		}
+
+		if (compression.equals(GZIP)) {
+			extension += ".gz";
+		}
+		else if (compression.equals(DEFLATE)) {
+			extension += ".zz";
+		}
+		else if (!compression.equals(NONE)) {
+			throw new ResourceInitializationException(String.format(
+					"parameter '%1$s' must be one of '%2$s', '%3$s' or '%4$s'.", PARAM_COMPRESSION,
+					NONE, GZIP, DEFLATE), null);
+		}
+
+		if (writerThreads < 0) {
+			throw new ResourceInitializationException(String.format(
+					"parameter '%1$s' must not be negative.", PARAM_WRITER_THREADS), null);
+		}
+		pending = new Semaphore(2 * writerThreads);
+
+		if (segmentSize < 0) {
+			throw new ResourceInitializationException(String.format(
+					"parameter '%1$s' must not be negative.", PARAM_SEGMENT_SIZE), null);
+		}
+		if (segmentSize > 0) {
+			segments = new SegmentWriter(outputDirectory, segmentSize);
 		}
 
 		fileNamer = InitializableFactory
@@ -117,14 +242,27 @@ public class XWriter extends JCasConsumer_ImplBase {
 
 	@Override
 	public void process(JCas jcas) throws AnalysisEngineProcessException {
-		String fileName = fileNamer.nameFile(jcas);
-		try {
-			if (useXMI) {
-				writeXmi(jcas.getCas(), fileName);
+		String name = fileNamer.nameFile(jcas) + extension;
+		if (writerThreads > 0) {
+			processAsync(jcas, name);
+			return;
+		}
+		if (segments != null) {
+			try {
+				segments.append(name, serialize(jcas));
 			}
-			else {
-				writeXCas(jcas.getCas(), fileName);
+			catch (IOException e) {
+				throw new AnalysisEngineProcessException(e);
 			}
+			return;
+		}
+
+		File outFile = new File(outputDirectory, name);
+		OutputStream out = null;
+		try {
+			out = new BufferedOutputStream(new FileOutputStream(outFile), BUFFER_SIZE);
+			out = compress(out);
+			serialize(jcas.getCas(), out);
 		}
 		catch (IOException e) {
 			throw new AnalysisEngineProcessException(e);
@@ -132,39 +270,186 @@ public class XWriter extends JCasConsumer_ImplBase {
 		catch (SAXException e) {
 			throw new AnalysisEngineProcessException(e);
 		}
+		finally {
+			close(out);
+		}
 	}
 
-	private void writeXCas(CAS aCas, String fileName) throws IOException, SAXException {
-		File outFile = new File(outputDirectory, fileName + ".xcas");
-		FileOutputStream out = null;
+	private void processAsync(JCas aJCas, final String aName)
+			throws AnalysisEngineProcessException {
+		checkWriteFailure();
+
+		final ByteArrayOutputStream buffer = serialize(aJCas);
+
 		try {
-			out = new FileOutputStream(outFile);
-			XCASSerializer ser = new XCASSerializer(aCas.getTypeSystem());
-			XMLSerializer xmlSer = new XMLSerializer(out, false);
-			ser.serialize(aCas, xmlSer.getContentHandler());
+			pending.acquire();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AnalysisEngineProcessException(e);
+		}
+
+		if (writers == null) {
+			writers = Executors.newFixedThreadPool(writerThreads, new WriterThreadFactory());
+		}
+		writers.execute(new Runnable() {
+			public void run() {
+				try {
+					if (segments != null) {
+						segments.append(aName, buffer);
+					}
+					else {
+						write(buffer, new File(outputDirectory, aName));
+					}
+				}
+				catch (Throwable e) {
+					writeFailure.compareAndSet(null, e);
+				}
+				finally {
+					pending.release();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Serialize and compress the CAS into memory.
+	 */
+	private ByteArrayOutputStream serialize(JCas aJCas) throws AnalysisEngineProcessException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		OutputStream out = null;
+		try {
+			out = compress(buffer);
+			serialize(aJCas.getCas(), out);
+		}
+		catch (IOException e) {
+			throw new AnalysisEngineProcessException(e);
+		}
+		catch (SAXException e) {
+			throw new AnalysisEngineProcessException(e);
 		}
 		finally {
-			if (out != null) {
-				out.close();
+			close(out);
+		}
+		return buffer;
+	}
+
+	/**
+	 * Waits until all files have been written in the background and completes the current
+	 * segment.
+	 */
+	@Override
+	public void collectionProcessComplete() throws AnalysisEngineProcessException {
+		if (writers != null) {
+			writers.shutdown();
+			try {
+				writers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new AnalysisEngineProcessException(e);
+			}
+			finally {
+				writers = null;
+			}
+		}
+		checkWriteFailure();
+		if (segments != null) {
+			try {
+				segments.close();
+			}
+			catch (IOException e) {
+				throw new AnalysisEngineProcessException(e);
 			}
 		}
+		super.collectionProcessComplete();
 	}
 
-	private void writeXmi(CAS aCas, String id) throws IOException, SAXException {
-		File outFile = new File(outputDirectory, id + ".xmi");
-		FileOutputStream out = null;
+	@Override
+	public void destroy() {
+		if (writers != null) {
+			writers.shutdownNow();
+			writers = null;
+		}
+		if (segments != null) {
+			try {
+				segments.close();
+			}
+			catch (IOException e) {
+				getContext().getLogger().log(Level.WARNING, "Unable to close segment", e);
+			}
+		}
+		super.destroy();
+	}
 
+	private void checkWriteFailure() throws AnalysisEngineProcessException {
+		Throwable e = writeFailure.getAndSet(null);
+		if (e != null) {
+			throw new AnalysisEngineProcessException(e);
+		}
+	}
+
+	private static void write(ByteArrayOutputStream aBuffer, File aOutFile) throws IOException {
+		OutputStream out = new FileOutputStream(aOutFile);
 		try {
-			out = new FileOutputStream(outFile);
+			aBuffer.writeTo(out);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Wrap the given stream according to the configured compression.
+	 */
+	private OutputStream compress(OutputStream aOut) throws IOException {
+		if (compression.equals(GZIP)) {
+			return new GZIPOutputStream(aOut, BUFFER_SIZE);
+		}
+		if (compression.equals(DEFLATE)) {
+			return new DeflaterOutputStream(aOut);
+		}
+		return aOut;
+	}
+
+	/**
+	 * Write the CAS to the given stream using the configured scheme. Compression is not applied
+	 * here.
+	 */
+	private void serialize(CAS aCas, OutputStream aOut) throws IOException, SAXException {
+		if (xmlSchemeName.equals(BINARY)) {
+			Serialization.serializeCAS(aCas, aOut);
+		}
+		else if (xmlSchemeName.equals(XCAS)) {
+			XCASSerializer ser = new XCASSerializer(aCas.getTypeSystem());
+			XMLSerializer xmlSer = new XMLSerializer(aOut, false);
+			ser.serialize(aCas, xmlSer.getContentHandler());
+		}
+		else {
 			XmiCasSerializer ser = new XmiCasSerializer(aCas.getTypeSystem());
-			XMLSerializer xmlSer = new XMLSerializer(out, false);
+			XMLSerializer xmlSer = new XMLSerializer(aOut, false);
 			ser.serialize(aCas, xmlSer.getContentHandler());
 		}
-		finally {
-			if (out != null) {
-				out.close();
+	}
+
+	private void close(OutputStream aOut) throws AnalysisEngineProcessException {
+		if (aOut != null) {
+			try {
+				aOut.close();
+			}
+			catch (IOException e) {
+				throw new AnalysisEngineProcessException(e);
 			}
 		}
 	}
 
+	private static class WriterThreadFactory implements ThreadFactory {
+		private static final AtomicInteger COUNT = new AtomicInteger();
+
+		public Thread newThread(Runnable aRunnable) {
+			Thread thread = new Thread(aRunnable, "XWriter-" + COUNT.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
 }
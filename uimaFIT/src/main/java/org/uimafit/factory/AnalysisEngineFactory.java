@@ -18,9 +18,6 @@
 package org.uimafit.factory;
 
 import static java.util.Arrays.asList;
-import static org.uimafit.descriptor.OperationalProperties.MODIFIES_CAS_DEFAULT;
-import static org.uimafit.descriptor.OperationalProperties.MULTIPLE_DEPLOYMENT_ALLOWED_DEFAULT;
-import static org.uimafit.descriptor.OperationalProperties.OUTPUTS_NEW_CASES_DEFAULT;
 import static org.uimafit.factory.ConfigurationParameterFactory.createConfigurationData;
 import static org.uimafit.factory.ConfigurationParameterFactory.ensureParametersComeInPairs;
 import static org.uimafit.factory.ExternalResourceFactory.bindExternalResource;
@@ -30,7 +27,6 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -52,21 +48,17 @@ import org.apache.uima.analysis_engine.metadata.impl.FlowControllerDeclaration_i
 import org.apache.uima.cas.CAS;
 import org.apache.uima.flow.FlowControllerDescription;
 import org.apache.uima.jcas.JCas;
-import org.apache.uima.resource.ExternalResourceDependency;
 import org.apache.uima.resource.ExternalResourceDescription;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.resource.ResourceSpecifier;
 import org.apache.uima.resource.metadata.Capability;
 import org.apache.uima.resource.metadata.ConfigurationParameter;
 import org.apache.uima.resource.metadata.FsIndexCollection;
-import org.apache.uima.resource.metadata.OperationalProperties;
 import org.apache.uima.resource.metadata.TypePriorities;
 import org.apache.uima.resource.metadata.TypeSystemDescription;
 import org.apache.uima.resource.metadata.impl.Import_impl;
 import org.apache.uima.util.FileUtils;
-import org.uimafit.component.initialize.ExternalResourceInitializer;
 import org.uimafit.factory.ConfigurationParameterFactory.ConfigurationData;
-import org.uimafit.util.ReflectionUtil;
 
 /**
  * @author Steven Bethard, Philip Ogren, Fabio Mancinelli
@@ -279,21 +271,9 @@ public final class AnalysisEngineFactory {
 		desc.setFrameworkImplementation(Constants.JAVA_FRAMEWORK_NAME);
 		desc.setPrimitive(true);
 		desc.setAnnotatorImplementationName(componentClass.getName());
-		org.uimafit.descriptor.OperationalProperties componentAnno = ReflectionUtil
-				.getInheritableAnnotation(org.uimafit.descriptor.OperationalProperties.class,
-						componentClass);
-		if (componentAnno != null) {
-			OperationalProperties op = desc.getAnalysisEngineMetaData().getOperationalProperties();
-			op.setMultipleDeploymentAllowed(componentAnno.multipleDeploymentAllowed());
-			op.setModifiesCas(componentAnno.modifiesCas());
-			op.setOutputsNewCASes(componentAnno.outputsNewCases());
-		}
-		else {
-			OperationalProperties op = desc.getAnalysisEngineMetaData().getOperationalProperties();
-			op.setMultipleDeploymentAllowed(MULTIPLE_DEPLOYMENT_ALLOWED_DEFAULT);
-			op.setModifiesCas(MODIFIES_CAS_DEFAULT);
-			op.setOutputsNewCASes(OUTPUTS_NEW_CASES_DEFAULT);
-		}
+
+		ReflectedMetaData reflected = ReflectedMetaData.get(componentClass);
+		reflected.configure(desc.getAnalysisEngineMetaData().getOperationalProperties());
 
 		AnalysisEngineMetaData meta = desc.getAnalysisEngineMetaData();
 		meta.setName(componentClass.getName());
@@ -304,7 +284,7 @@ public final class AnalysisEngineFactory {
 		meta.setDescription("Descriptor automatically generated by uimaFIT");
 		meta.setVersion("unknown");
 
-		ConfigurationData reflectedConfigurationData = createConfigurationData(componentClass);
+		ConfigurationData reflectedConfigurationData = reflected.getConfigurationData();
 		ResourceCreationSpecifierFactory.setConfigurationParameters(desc,
 				reflectedConfigurationData.configurationParameters,
 				reflectedConfigurationData.configurationValues);
@@ -329,7 +309,7 @@ public final class AnalysisEngineFactory {
 		}
 		else {
 			desc.getAnalysisEngineMetaData().setFsIndexCollection(
-					FsIndexFactory.createFsIndexCollection(componentClass));
+					reflected.getFsIndexCollection());
 		}
 
 		// set capabilities from the argument to this call or from the annotation present in the
@@ -338,17 +318,14 @@ public final class AnalysisEngineFactory {
 			desc.getAnalysisEngineMetaData().setCapabilities(capabilities);
 		}
 		else {
-			Capability capability = CapabilityFactory.createCapability(componentClass);
+			Capability capability = reflected.getCapability();
 			if (capability != null) {
 				desc.getAnalysisEngineMetaData().setCapabilities(new Capability[] { capability });
 			}
 		}
 		
 		// Extract external resource dependencies
-		Collection<ExternalResourceDependency> deps = ExternalResourceInitializer
-				.getResourceDeclarations(componentClass).values();
-		desc.setExternalResourceDependencies(deps.toArray(new ExternalResourceDependency[deps
-				.size()]));
+		desc.setExternalResourceDependencies(reflected.getExternalResourceDependencies());
 		
 		// Bind External Resources
 		if (externalResources != null) {
@@ -20,14 +20,12 @@ package org.uimafit.factory;
 import static org.uimafit.factory.ConfigurationParameterFactory.createConfigurationData;
 import static org.uimafit.factory.ConfigurationParameterFactory.ensureParametersComeInPairs;
 import static org.uimafit.factory.ExternalResourceFactory.bindExternalResource;
-import static org.uimafit.factory.FsIndexFactory.createFsIndexCollection;
 import static org.uimafit.factory.ResourceCreationSpecifierFactory.createResourceCreationSpecifier;
 import static org.uimafit.factory.TypePrioritiesFactory.createTypePriorities;
 import static org.uimafit.factory.TypeSystemDescriptionFactory.createTypeSystemDescription;
 
 import java.io.IOException;
 import java.net.URL;
-import java.util.Collection;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -36,7 +34,6 @@ import org.apache.uima.UIMAException;
 import org.apache.uima.UIMAFramework;
 import org.apache.uima.collection.CollectionReader;
 import org.apache.uima.collection.CollectionReaderDescription;
-import org.apache.uima.resource.ExternalResourceDependency;
 import org.apache.uima.resource.ExternalResourceDescription;
 import org.apache.uima.resource.ResourceCreationSpecifier;
 import org.apache.uima.resource.ResourceInitializationException;
@@ -47,7 +44,6 @@ import org.apache.uima.resource.metadata.FsIndexCollection;
 import org.apache.uima.resource.metadata.Import;
 import org.apache.uima.resource.metadata.TypePriorities;
 import org.apache.uima.resource.metadata.TypeSystemDescription;
-import org.uimafit.component.initialize.ExternalResourceInitializer;
 import org.uimafit.factory.ConfigurationParameterFactory.ConfigurationData;
 
 /**
@@ -252,7 +248,8 @@ public final class CollectionReaderFactory {
 		desc.setFrameworkImplementation(Constants.JAVA_FRAMEWORK_NAME);
 		desc.setImplementationName(readerClass.getName());
 
-		ConfigurationData reflectedConfigurationData = createConfigurationData(readerClass);
+		ReflectedMetaData reflected = ReflectedMetaData.get(readerClass);
+		ConfigurationData reflectedConfigurationData = reflected.getConfigurationData();
 		ResourceCreationSpecifierFactory.setConfigurationParameters(desc,
 				reflectedConfigurationData.configurationParameters,
 				reflectedConfigurationData.configurationValues);
@@ -277,7 +274,7 @@ public final class CollectionReaderFactory {
 		}
 		else {
 			desc.getCollectionReaderMetaData().setFsIndexCollection(
-					createFsIndexCollection(readerClass));
+					reflected.getFsIndexCollection());
 		}
 
 		// set capabilities from the argument to this call or from the annotation present in the
@@ -286,17 +283,14 @@ public final class CollectionReaderFactory {
 			desc.getCollectionReaderMetaData().setCapabilities(capabilities);
 		}
 		else {
-			Capability capability = CapabilityFactory.createCapability(readerClass);
+			Capability capability = reflected.getCapability();
 			if (capability != null) {
 				desc.getCollectionReaderMetaData().setCapabilities(new Capability[] { capability });
 			}
 		}
 		
 		// Extract external resource dependencies
-		Collection<ExternalResourceDependency> deps = ExternalResourceInitializer
-				.getResourceDeclarations(readerClass).values();
-		desc.setExternalResourceDependencies(deps.toArray(new ExternalResourceDependency[deps
-				.size()]));
+		desc.setExternalResourceDependencies(reflected.getExternalResourceDependencies());
 
 		// Bind External Resources
 		if (externalResources != null) {
@@ -24,21 +24,35 @@ import static org.apache.uima.collection.impl.metadata.cpe.CpeDescriptorFactory.
 import static org.apache.uima.collection.impl.metadata.cpe.CpeDescriptorFactory.produceCollectionReader;
 import static org.apache.uima.collection.impl.metadata.cpe.CpeDescriptorFactory.produceDescriptor;
 
-import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.FileUtils;
 import org.apache.uima.UIMAFramework;
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.analysis_engine.metadata.FixedFlow;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.impl.XmiCasSerializer;
+import org.apache.uima.collection.EntityProcessStatus;
 import org.apache.uima.collection.CollectionProcessingEngine;
 import org.apache.uima.collection.CollectionReaderDescription;
 import org.apache.uima.collection.StatusCallbackListener;
 import org.apache.uima.collection.impl.metadata.CpeDefaultValues;
+import org.apache.uima.collection.impl.metadata.cpe.CpeCasProcessorsImpl;
 import org.apache.uima.collection.metadata.CpeCollectionReader;
 import org.apache.uima.collection.metadata.CpeComponentDescriptor;
 import org.apache.uima.collection.metadata.CpeDescription;
@@ -46,9 +60,13 @@ import org.apache.uima.collection.metadata.CpeDescriptorException;
 import org.apache.uima.collection.metadata.CpeInclude;
 import org.apache.uima.collection.metadata.CpeIntegratedCasProcessor;
 import org.apache.uima.resource.ResourceInitializationException;
-import org.apache.uima.resource.ResourceManager;
 import org.apache.uima.resource.ResourceSpecifier;
+import org.apache.uima.resource.impl.ResourceManager_impl;
+import org.apache.uima.resource.metadata.Import;
+import org.apache.uima.resource.metadata.OperationalProperties;
 import org.apache.uima.util.InvalidXMLException;
+import org.apache.uima.util.Level;
+import org.apache.uima.util.XMLSerializer;
 import org.xml.sax.SAXException;
 
 /**
@@ -56,14 +74,37 @@ import org.xml.sax.SAXException;
  * {@link AnalysisEngineDescription}. If an aggregate analysis engine description is used, the
  * builder will add each child of the aggregate engine as one processor to the engine. This works
  * only for aggregate analysis engines using a {@link FixedFlow}.
+ * <p>
+ * The descriptions are not written to disk by {@link #createCpe(StatusCallbackListener)}. Instead,
+ * the CPE description imports them by name and the resource manager of the CPE serves their XML
+ * from memory. Only {@link #getCpeDescription()} writes them to temporary files, so that the
+ * description it returns can be serialized or used to create a CPE by other means.
+ * <p>
+ * By default, the CPE terminates on the first error. Use
+ * {@link #setErrorThreshold(int, int, String)} and {@link #setSkipFailedDocuments(boolean)} to
+ * skip failing documents instead and {@link #setDeadLetterDirectory(File)} to keep them for later
+ * inspection.
  *
  * @author Richard Eckart de Castilho
  */
 public class CpeBuilder
 {
-//	private final Log log = LogFactory.getLog(getClass());
+	/**
+	 * Stop the CPE when the error threshold of a CAS processor is exceeded.
+	 */
+	public static final String ACTION_TERMINATE = "terminate";
+
+	/**
+	 * Skip failing documents and continue even when the error threshold of a CAS processor is
+	 * exceeded.
+	 */
+	public static final String ACTION_CONTINUE = "continue";
 
-	private static final String ACTION_ON_MAX_ERROR = "terminate";
+	/**
+	 * Stop sending documents to a CAS processor when its error threshold is exceeded, but continue
+	 * running the rest of the CPE.
+	 */
+	public static final String ACTION_DISABLE = "disable";
 
 	/**
 	 * used for calculating the CAS pool size which needs to be adjusted to the number of parallel
@@ -73,19 +114,181 @@ public class CpeBuilder
 
 	private final CpeDescription cpeDesc = produceDescriptor();
 
+	/**
+	 * XML of the descriptions imported by the CPE description, keyed by the path their import
+	 * resolves to.
+	 */
+	private final Map<String, byte[]> descriptors = new HashMap<String, byte[]>();
+
+	/**
+	 * The component descriptors still importing their description from memory, by import name.
+	 */
+	private final Map<String, CpeComponentDescriptor> inMemoryDescriptors =
+		new LinkedHashMap<String, CpeComponentDescriptor>();
+
+	/**
+	 * The analysis engines and their CAS processors by delegate key, in flow order.
+	 */
+	private final Map<String, AnalysisEngineDescription> delegates =
+		new LinkedHashMap<String, AnalysisEngineDescription>();
+	private final Map<String, CpeIntegratedCasProcessor> processors =
+		new HashMap<String, CpeIntegratedCasProcessor>();
+
+	/**
+	 * The component descriptors of the CAS processors by delegate key: as added, and restricted to
+	 * a single instance. The latter are created once when first needed and reused on subsequent
+	 * calls to {@link #createCpe(StatusCallbackListener)}.
+	 */
+	private final Map<String, CpeComponentDescriptor> componentDescriptors =
+		new HashMap<String, CpeComponentDescriptor>();
+	private final Map<String, CpeComponentDescriptor> singleComponentDescriptors =
+		new HashMap<String, CpeComponentDescriptor>();
+
+	private final Map<String, Integer> threadCounts = new HashMap<String, Integer>();
+
+	private int casPoolSize = 0;
+
+	private int batchSize = 0;
+
+	private int maxErrorCount = 0;
+
+	private int maxErrorSampleSize = 0;
+
+	private String actionOnMaxError = ACTION_TERMINATE;
+
+	private boolean skipFailedDocuments = false;
+
+	private int timeout = 0;
+
+	private File deadLetterDirectory;
+
+	/**
+	 * Set the number of threads used for analysis engines which allow multiple deployment and for
+	 * which no thread count has been set via {@link #setThreadCount(String, int)}.
+	 *
+	 * @param aMaxProcessingUnitThreadCount
+	 *            the number of threads. If this is 0, the CPE default is used.
+	 */
 	public void setMaxProcessingUnitThreadCount(int aMaxProcessingUnitThreadCount)
 	{
 		maxProcessingUnitThreadCount = aMaxProcessingUnitThreadCount;
 	}
 
+	/**
+	 * Set the number of threads for a delegate of the analysis engine. If the analysis engine is
+	 * primitive, its key is its name. The CPE runs the same number of instances of each
+	 * delegate which allows multiple deployment, so all these delegates get the largest thread
+	 * count requested. Setting the thread count to 1 keeps a delegate at a single instance. A
+	 * delegate which does not allow multiple deployment (see
+	 * {@link org.uimafit.descriptor.OperationalProperties}) always runs as a single instance.
+	 * <p>
+	 * Note that the CPE runs all single-instance delegates after the replicated ones, so it is best
+	 * to restrict only delegates at the end of the flow, e.g. writers.
+	 *
+	 * @param aDelegateKey
+	 *            the key of the delegate.
+	 * @param aThreadCount
+	 *            the number of threads.
+	 */
+	public void setThreadCount(String aDelegateKey, int aThreadCount)
+	{
+		threadCounts.put(aDelegateKey, aThreadCount);
+	}
+
+	/**
+	 * Set the number of CASes in the CAS pool of the CPE.
+	 *
+	 * @param aCasPoolSize
+	 *            the pool size. If this is 0, the pool size is the number of threads plus two.
+	 */
+	public void setCasPoolSize(int aCasPoolSize)
+	{
+		casPoolSize = aCasPoolSize;
+	}
+
+	/**
+	 * Set the number of CASes after which each CAS processor is notified that a batch is
+	 * complete.
+	 *
+	 * @param aBatchSize
+	 *            the batch size. If this is 0, the CPE default is used.
+	 */
+	public void setBatchSize(int aBatchSize)
+	{
+		batchSize = aBatchSize;
+	}
+
+	/**
+	 * Set how many errors each CAS processor may encounter before the given action is taken. Until
+	 * the threshold is exceeded, the CPE continues after an error. By default, the CPE terminates on
+	 * the first error.
+	 * <p>
+	 * Unless {@link #setSkipFailedDocuments(boolean) failed documents are skipped}, the CPE passes
+	 * a failed document to the CAS processor again, each attempt counting as an error, until it
+	 * succeeds or the threshold is exceeded.
+	 *
+	 * @param aMaxErrorCount
+	 *            the number of errors tolerated.
+	 * @param aSampleSize
+	 *            the number of documents within which the errors are counted, e.g. 10 errors per
+	 *            1000 documents. If this is 0, the errors are counted over the whole collection.
+	 * @param aAction
+	 *            {@link #ACTION_TERMINATE}, {@link #ACTION_CONTINUE} or {@link #ACTION_DISABLE}.
+	 */
+	public void setErrorThreshold(int aMaxErrorCount, int aSampleSize, String aAction)
+	{
+		maxErrorCount = aMaxErrorCount;
+		maxErrorSampleSize = aSampleSize;
+		actionOnMaxError = aAction;
+	}
+
+	/**
+	 * Set whether a document on which a CAS processor failed is dropped, so the CPE continues with
+	 * the next document. By default, the CPE keeps the document and passes it to the CAS processor
+	 * again.
+	 *
+	 * @param aSkip
+	 *            whether to drop failed documents.
+	 * @see #setErrorThreshold(int, int, String)
+	 */
+	public void setSkipFailedDocuments(boolean aSkip)
+	{
+		skipFailedDocuments = aSkip;
+	}
+
+	/**
+	 * Set the time a CAS processor may take for a document before the document counts as failed.
+	 *
+	 * @param aTimeout
+	 *            the timeout in milliseconds. If this is 0, the CPE default is used.
+	 */
+	public void setTimeout(int aTimeout)
+	{
+		timeout = aTimeout;
+	}
+
+	/**
+	 * Set a directory to which documents that failed processing are written. For each failed
+	 * document, the CAS is written as XMI to {@code failed-<n>.xmi} and the exceptions to
+	 * {@code failed-<n>.txt}. Combined with an {@link #setErrorThreshold(int, int, String) error
+	 * threshold}, this allows failing documents to be skipped and re-processed later.
+	 *
+	 * @param aDirectory
+	 *            the directory or {@code null} to discard failed documents.
+	 */
+	public void setDeadLetterDirectory(File aDirectory)
+	{
+		deadLetterDirectory = aDirectory;
+	}
+
 	public void setReader(CollectionReaderDescription aDesc)
 		throws IOException, SAXException, CpeDescriptorException
 	{
 		// Remove all collection readers
 		cpeDesc.setAllCollectionCollectionReaders(new CpeCollectionReader[0]);
 
-		URL descUrl = materializeDescriptor(aDesc).toURI().toURL();
-		CpeCollectionReader reader = produceCollectionReader(descUrl.toString());
+		CpeCollectionReader reader = produceCollectionReader();
+		reader.getCollectionIterator().setDescriptor(materializeDescriptor(aDesc));
 		cpeDesc.addCollectionReader(reader);
 	}
 
@@ -94,92 +297,345 @@ public class CpeBuilder
 	{
 		// Remove all CAS processors
 		cpeDesc.setCpeCasProcessors(null);
+		delegates.clear();
+		processors.clear();
 
 		if (aDesc.isPrimitive()) {
-			// For a primitive AE we just add it.
-			CpeIntegratedCasProcessor proc = createProcessor("", aDesc);
+			// For a primitive AE we just add it. The CPE requires a non-empty processor name.
+			CpeIntegratedCasProcessor proc = createProcessor(aDesc.getAnalysisEngineMetaData()
+					.getName(), aDesc);
 			cpeDesc.addCasProcessor(proc);
 		}
 		else {
 			// For an aggregate AE we dive into the first aggregation level and add each of the
 			// contained AEs separately, thus allowing us to control their properties separately
 
-			Map<String, ResourceSpecifier> delegates = aDesc.getDelegateAnalysisEngineSpecifiers();
+			Map<String, ResourceSpecifier> specifiers = aDesc.getDelegateAnalysisEngineSpecifiers();
 			FixedFlow flow = (FixedFlow) aDesc.getAnalysisEngineMetaData().getFlowConstraints();
 			for (String key : flow.getFixedFlow()) {
-				AnalysisEngineDescription aeDesc = (AnalysisEngineDescription) delegates.get(key);
-//				boolean multi = aeDesc.getAnalysisEngineMetaData().getOperationalProperties()
-//						.isMultipleDeploymentAllowed();
-//				log.info("["+key+"] runs "+ (multi ? "multi-threaded" : "single-threaded"));
+				AnalysisEngineDescription aeDesc = (AnalysisEngineDescription) specifiers.get(key);
 				CpeIntegratedCasProcessor proc = createProcessor(key, aeDesc);
 				cpeDesc.addCasProcessor(proc);
 			}
 		}
 	}
 
+	/**
+	 * Get the CPE description. The component descriptions which are so far only held in memory are
+	 * written to temporary files, which are deleted when the JVM exits, and the description is
+	 * changed to include these files. Thus, the description can be written to XML or passed to
+	 * {@link UIMAFramework#produceCollectionProcessingEngine(CpeDescription)}.
+	 *
+	 * @return the CPE description.
+	 * @throws IllegalStateException
+	 *             if the component descriptions cannot be written.
+	 */
 	public CpeDescription getCpeDescription()
 	{
+		for (Map.Entry<String, CpeComponentDescriptor> e : inMemoryDescriptors.entrySet()) {
+			CpeInclude include = getResourceSpecifierFactory().createInclude();
+			try {
+				File file = File.createTempFile("uimafit-cpe-desc", ".xml");
+				file.deleteOnExit();
+				FileUtils.writeByteArrayToFile(file, descriptors.get(e.getKey() + ".xml"));
+				include.set(file.toURI().toURL().toString());
+			}
+			catch (IOException ex) {
+				throw new IllegalStateException("Unable to write component description ["
+						+ e.getKey() + "]", ex);
+			}
+			e.getValue().setImport(null);
+			e.getValue().setInclude(include);
+		}
+		inMemoryDescriptors.clear();
 		return cpeDesc;
 	}
 	
 	public CollectionProcessingEngine createCpe(StatusCallbackListener aListener)
 		throws ResourceInitializationException, CpeDescriptorException
 	{
-		ResourceManager resMgr = UIMAFramework.newDefaultResourceManager();
-		if (maxProcessingUnitThreadCount == 0) {
-			cpeDesc.getCpeCasProcessors().setPoolSize(3);
+		int threads = configureThreads();
+		if (skipFailedDocuments) {
+			((CpeCasProcessorsImpl) cpeDesc.getCpeCasProcessors()).setDropCasOnException(true);
+		}
+		if (threads == 0) {
+			cpeDesc.getCpeCasProcessors().setPoolSize(casPoolSize > 0 ? casPoolSize : 3);
 		}
 		else {
-			cpeDesc.getCpeCasProcessors().setPoolSize(maxProcessingUnitThreadCount + 2);
-			cpeDesc.setProcessingUnitThreadCount(maxProcessingUnitThreadCount);
+			cpeDesc.getCpeCasProcessors().setPoolSize(casPoolSize > 0 ? casPoolSize : threads + 2);
+			cpeDesc.setProcessingUnitThreadCount(threads);
 		}
+		for (CpeIntegratedCasProcessor proc : processors.values()) {
+			if (batchSize > 0) {
+				proc.setBatchSize(batchSize);
+			}
+			configureErrorHandling(proc);
+		}
+		ResourceManager_impl resMgr = new InMemoryResourceManager(descriptors);
 		CollectionProcessingEngine cpe = produceCollectionProcessingEngine(cpeDesc, resMgr, null);
+		if (deadLetterDirectory != null) {
+			cpe.addStatusCallbackListener(new DeadLetterListener(deadLetterDirectory));
+		}
 		cpe.addStatusCallbackListener(aListener);
 		return cpe;
 	}
 
 	/**
-	 * Writes a temporary file containing a XML descriptor of the given resource. Returns the file.
+	 * Determine the number of processing unit threads and restrict the delegates which are meant
+	 * to run as a single instance. The CPE runs a single instance of a delegate if it does not
+	 * allow multiple deployment, so the delegate description is changed accordingly.
 	 *
-	 * @param resource
-	 *            A resource specifier that should we materialized.
-	 * @return The file containing the XML representation of the given resource.
+	 * @return the number of processing unit threads or 0 to use the CPE default.
 	 */
-	private static File materializeDescriptor(ResourceSpecifier resource)
-		throws IOException, SAXException
+	private int configureThreads()
+		throws ResourceInitializationException, CpeDescriptorException
 	{
-		File tempDesc = File.createTempFile("desc", ".xml");
-		tempDesc.deleteOnExit();
-		
-		BufferedWriter out = null;
-		try {
-			out = new BufferedWriter(new FileWriter(tempDesc));
-			resource.toXML(out);
+		int threads = maxProcessingUnitThreadCount;
+		for (Map.Entry<String, AnalysisEngineDescription> e : delegates.entrySet()) {
+			Integer count = threadCounts.get(e.getKey());
+			if (count != null && isMultipleDeploymentAllowed(e.getValue())) {
+				threads = Math.max(threads, count);
+			}
 		}
-		finally {
-			IOUtils.closeQuietly(out);
+
+		for (Map.Entry<String, AnalysisEngineDescription> e : delegates.entrySet()) {
+			Integer count = threadCounts.get(e.getKey());
+			CpeIntegratedCasProcessor proc = processors.get(e.getKey());
+			boolean multi = isMultipleDeploymentAllowed(e.getValue());
+			boolean single = !multi || (count != null && count <= 1);
+			if (multi && single && threads > 1) {
+				proc.setCpeComponentDescriptor(getSingleComponentDescriptor(e.getKey(),
+						e.getValue()));
+			}
+			else {
+				proc.setCpeComponentDescriptor(componentDescriptors.get(e.getKey()));
+			}
+			proc.setAttributeValue(CpeDefaultValues.PROCESSING_UNIT_THREAD_COUNT,
+					single ? 1 : Math.max(threads, 1));
 		}
 
-		return tempDesc;
+		return threads;
 	}
 
-	private static CpeIntegratedCasProcessor createProcessor(String key, AnalysisEngineDescription aDesc)
-		throws IOException, SAXException, CpeDescriptorException
+	/**
+	 * Get a component descriptor for the given delegate which does not allow multiple deployment.
+	 */
+	private CpeComponentDescriptor getSingleComponentDescriptor(String aKey,
+			AnalysisEngineDescription aDesc)
+		throws ResourceInitializationException
+	{
+		CpeComponentDescriptor ccd = singleComponentDescriptors.get(aKey);
+		if (ccd == null) {
+			AnalysisEngineDescription desc = (AnalysisEngineDescription) aDesc.clone();
+			OperationalProperties op = desc.getAnalysisEngineMetaData().getOperationalProperties();
+			if (op == null) {
+				op = getResourceSpecifierFactory().createOperationalProperties();
+				desc.getAnalysisEngineMetaData().setOperationalProperties(op);
+			}
+			op.setMultipleDeploymentAllowed(false);
+			try {
+				ccd = materializeDescriptor(desc);
+			}
+			catch (IOException ex) {
+				throw new ResourceInitializationException(ex);
+			}
+			catch (SAXException ex) {
+				throw new ResourceInitializationException(ex);
+			}
+			singleComponentDescriptors.put(aKey, ccd);
+		}
+		return ccd;
+	}
+
+	private void configureErrorHandling(CpeIntegratedCasProcessor aProc)
+	{
+		aProc.setActionOnMaxError(actionOnMaxError);
+		aProc.setMaxErrorCount(maxErrorCount);
+		if (maxErrorSampleSize > 0) {
+			aProc.setMaxErrorSampleSize(maxErrorSampleSize);
+		}
+		if (timeout > 0) {
+			aProc.setTimeout(timeout);
+		}
+	}
+
+	private static boolean isMultipleDeploymentAllowed(AnalysisEngineDescription aDesc)
+	{
+		OperationalProperties op = aDesc.getAnalysisEngineMetaData().getOperationalProperties();
+		return op == null || op.isMultipleDeploymentAllowed();
+	}
+
+	/**
+	 * Serializes the given resource to XML in memory and creates a component descriptor importing
+	 * it by name.
+	 *
+	 * @param resource
+	 *            A resource specifier that should we materialized.
+	 * @return The component descriptor referring to the XML representation of the given resource.
+	 */
+	private CpeComponentDescriptor materializeDescriptor(ResourceSpecifier resource)
+		throws IOException, SAXException
 	{
-		URL descUrl = materializeDescriptor(aDesc).toURI().toURL();
+		ByteArrayOutputStream xml = new ByteArrayOutputStream();
+		resource.toXML(xml);
+
+		// Imports by name resolve to the path name.replace('.', '/') + ".xml", so the name must
+		// not contain any dots.
+		String name = "uimafit-cpe-desc-" + descriptors.size();
+		descriptors.put(name + ".xml", xml.toByteArray());
 
-		CpeInclude cpeInclude = getResourceSpecifierFactory().createInclude();
-		cpeInclude.set(descUrl.toString());
+		Import imp = getResourceSpecifierFactory().createImport();
+		imp.setName(name);
 
 		CpeComponentDescriptor ccd = getResourceSpecifierFactory().createDescriptor();
-		ccd.setInclude(cpeInclude);
+		ccd.setImport(imp);
+		inMemoryDescriptors.put(name, ccd);
+		return ccd;
+	}
 
+	private CpeIntegratedCasProcessor createProcessor(String key, AnalysisEngineDescription aDesc)
+		throws IOException, SAXException, CpeDescriptorException
+	{
 		CpeIntegratedCasProcessor proc = produceCasProcessor(key);
+		CpeComponentDescriptor ccd = materializeDescriptor(aDesc);
 		proc.setCpeComponentDescriptor(ccd);
+		componentDescriptors.put(key, ccd);
 		proc.setAttributeValue(CpeDefaultValues.PROCESSING_UNIT_THREAD_COUNT, 1);
-		proc.setActionOnMaxError(ACTION_ON_MAX_ERROR);
-		proc.setMaxErrorCount(0);
+
+		delegates.put(key, aDesc);
+		processors.put(key, proc);
 
 		return proc;
 	}
+
+	/**
+	 * Resource manager resolving the imports created by {@link CpeBuilder#materializeDescriptor}
+	 * to URLs that read the XML from memory. All other paths are resolved as usual.
+	 */
+	private static class InMemoryResourceManager
+		extends ResourceManager_impl
+	{
+		private final Map<String, byte[]> descriptors;
+		private final URLStreamHandler handler = new URLStreamHandler()
+		{
+			@Override
+			protected URLConnection openConnection(final URL aUrl)
+				throws IOException
+			{
+				final byte[] xml = descriptors.get(aUrl.getPath().substring(1));
+				if (xml == null) {
+					throw new IOException("No such in-memory descriptor: " + aUrl);
+				}
+				return new URLConnection(aUrl)
+				{
+					@Override
+					public void connect()
+					{
+						// Nothing to do
+					}
+
+					@Override
+					public InputStream getInputStream()
+					{
+						return new ByteArrayInputStream(xml);
+					}
+				};
+			}
+		};
+
+		public InMemoryResourceManager(Map<String, byte[]> aDescriptors)
+		{
+			descriptors = new HashMap<String, byte[]>(aDescriptors);
+		}
+
+		@Override
+		public URL resolveRelativePath(String aRelativePath)
+			throws MalformedURLException
+		{
+			if (descriptors.containsKey(aRelativePath)) {
+				return new URL("uimafit-memory", null, -1, "/" + aRelativePath, handler);
+			}
+			return super.resolveRelativePath(aRelativePath);
+		}
+	}
+
+	/**
+	 * Writes the documents which failed processing to a directory.
+	 */
+	private static class DeadLetterListener
+		implements StatusCallbackListener
+	{
+		private final File directory;
+		private final AtomicInteger count = new AtomicInteger();
+
+		public DeadLetterListener(File aDirectory)
+		{
+			directory = aDirectory;
+		}
+
+		public void entityProcessComplete(CAS aCas, EntityProcessStatus aStatus)
+		{
+			if (!aStatus.isException() || aCas == null) {
+				return;
+			}
+
+			String name = "failed-" + count.getAndIncrement();
+			try {
+				directory.mkdirs();
+				OutputStream out = new FileOutputStream(new File(directory, name + ".xmi"));
+				try {
+					XmiCasSerializer ser = new XmiCasSerializer(aCas.getTypeSystem());
+					ser.serialize(aCas, new XMLSerializer(out, false).getContentHandler());
+				}
+				finally {
+					out.close();
+				}
+
+				PrintWriter log = new PrintWriter(new File(directory, name + ".txt"), "UTF-8");
+				try {
+					for (Exception e : aStatus.getExceptions()) {
+						e.printStackTrace(log);
+					}
+				}
+				finally {
+					log.close();
+				}
+			}
+			catch (Exception e) {
+				// The status listener must not fail, the CPE would not notice anyway
+				UIMAFramework.getLogger(CpeBuilder.class).log(Level.WARNING,
+						"Unable to write failed document to [" + directory + "]", e);
+			}
+		}
+
+		public void initializationComplete()
+		{
+			// Nothing to do
+		}
+
+		public void batchProcessComplete()
+		{
+			// Nothing to do
+		}
+
+		public void collectionProcessComplete()
+		{
+			// Nothing to do
+		}
+
+		public void paused()
+		{
+			// Nothing to do
+		}
+
+		public void resumed()
+		{
+			// Nothing to do
+		}
+
+		public void aborted()
+		{
+			// Nothing to do
+		}
+	}
 }
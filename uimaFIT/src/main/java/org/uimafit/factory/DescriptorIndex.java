@@ -0,0 +1,403 @@
+/*
+ Copyright 2012
+ Ubiquitous Knowledge Processing (UKP) Lab
+ Technische Universitaet Darmstadt
+ All rights reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.uimafit.factory;
+
+import static org.uimafit.factory.TypeSystemDescriptionFactory.resolve;
+import static org.uimafit.factory.TypeSystemDescriptionFactory.readManifests;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.LogFactory;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Precomputed index of the type and index descriptors which are otherwise found by resolving the
+ * patterns listed in the {@code META-INF/org.uimafit/types.txt} and
+ * {@code META-INF/org.uimafit/fsindexes.txt} files. The index is generated at build time using
+ * {@link #write(File)}, e.g. via {@link org.uimafit.util.DescriptorIndexPomFriendly}, and lists
+ * the descriptors by their class path names. If an index is present on the class path, the
+ * factories look up these names directly instead of scanning the class path for the patterns.
+ * <p>
+ * The index records a digest of each manifest found on the class path it was generated on. Each
+ * descriptor is listed together with the digest of a manifest located in the same class path
+ * entry, so at runtime the descriptor is located relative to that manifest without searching the
+ * class path. Only descriptors in class path entries without a manifest are looked up by name.
+ * <p>
+ * The index should only be generated for an application and not be shipped in a library. It is
+ * ignored if the manifests on the class path differ from the recorded ones, e.g. because a
+ * library contributing descriptors was added, removed or changed, or if a descriptor listed in
+ * the index no longer exists. Changes to the descriptors matched by the patterns of an unchanged
+ * manifest are not detected - the index has to be generated again in that case. The index is also
+ * ignored if additional patterns are set via the
+ * {@link TypeSystemDescriptionFactory#TYPE_IMPORT_PATTERN} or
+ * {@link FsIndexFactory#FS_INDEX_IMPORT_PATTERN} system properties.
+ *
+ * @author Richard Eckart de Castilho
+ */
+public final class DescriptorIndex {
+	/**
+	 * Class path location of the index.
+	 */
+	public static final String INDEX_LOCATION = "META-INF/org.uimafit/index.txt";
+
+	static final String TYPES = "types";
+
+	static final String FS_INDEXES = "fsindexes";
+
+	private static final String MANIFEST = "manifest";
+
+	/**
+	 * Marks descriptors located in a class path entry without a manifest.
+	 */
+	private static final String NO_MANIFEST = "*";
+
+	private DescriptorIndex() {
+		// This class is not meant to be instantiated
+	}
+
+	/**
+	 * Get the locations of the descriptors of the given kind listed in the indexes on the default
+	 * class path.
+	 *
+	 * @param aImportProperty
+	 *            the system property with additional patterns. If it is set, the index is not
+	 *            used.
+	 * @return the locations or {@code null} if the index cannot be used.
+	 */
+	static String[] getLocations(String aKind, String aImportProperty)
+			throws ResourceInitializationException {
+		if (System.getProperty(aImportProperty, "").trim().length() > 0) {
+			return null;
+		}
+		return getLocations(ClassUtils.getDefaultClassLoader(), aKind);
+	}
+
+	/**
+	 * Get the locations of the descriptors of the given kind listed in the indexes visible to the
+	 * given class loader.
+	 *
+	 * @return the locations or {@code null} if there is no index or if it is outdated.
+	 */
+	static String[] getLocations(ClassLoader aClassLoader, String aKind)
+			throws ResourceInitializationException {
+		try {
+			Enumeration<URL> indexes = aClassLoader.getResources(INDEX_LOCATION);
+			if (!indexes.hasMoreElements()) {
+				return null;
+			}
+
+			Map<String, String> roots = new HashMap<String, String>();
+			List<String> manifests = getManifests(aClassLoader, roots);
+
+			Set<String> locations = new LinkedHashSet<String>();
+			while (indexes.hasMoreElements()) {
+				URL index = indexes.nextElement();
+				if (!read(aClassLoader, index, aKind, manifests, roots, locations)) {
+					return null;
+				}
+			}
+			return locations.toArray(new String[locations.size()]);
+		}
+		catch (IOException e) {
+			throw new ResourceInitializationException(e);
+		}
+	}
+
+	/**
+	 * Add the locations of the descriptors of the given kind listed in an index.
+	 *
+	 * @return whether the index is up to date.
+	 */
+	private static boolean read(ClassLoader aClassLoader, URL aIndex, String aKind,
+			List<String> aManifests, Map<String, String> aRoots, Set<String> aLocations)
+			throws IOException {
+		List<String> manifests = new ArrayList<String>();
+		List<String[]> entries = new ArrayList<String[]>();
+		InputStream is = null;
+		try {
+			is = aIndex.openStream();
+			@SuppressWarnings("unchecked")
+			List<String> lines = IOUtils.readLines(is, "UTF-8");
+			for (String line : lines) {
+				if (line.length() == 0 || line.startsWith("#")) {
+					continue;
+				}
+				String[] fields = line.split(" ", 3);
+				if (fields.length != 3) {
+					return outdated(aIndex, "unknown entry [" + line + "]");
+				}
+				if (MANIFEST.equals(fields[0])) {
+					manifests.add(fields[1] + " " + fields[2]);
+				}
+				else if (aKind.equals(fields[0])) {
+					entries.add(fields);
+				}
+			}
+		}
+		finally {
+			IOUtils.closeQuietly(is);
+		}
+
+		Collections.sort(manifests);
+		if (!manifests.equals(aManifests)) {
+			return outdated(aIndex, "manifests have changed");
+		}
+
+		for (String[] entry : entries) {
+			String root = aRoots.get(entry[1]);
+			if (root != null) {
+				URL url = new URL(root + entry[2]);
+				if (!exists(url)) {
+					return outdated(aIndex, "[" + url + "] not found");
+				}
+				aLocations.add(url.toString());
+			}
+			else {
+				Enumeration<URL> urls = aClassLoader.getResources(entry[2]);
+				if (!urls.hasMoreElements()) {
+					return outdated(aIndex, "[" + entry[2] + "] not found");
+				}
+				while (urls.hasMoreElements()) {
+					aLocations.add(urls.nextElement().toString());
+				}
+			}
+		}
+		return true;
+	}
+
+	private static boolean outdated(URL aIndex, String aReason) {
+		LogFactory.getLog(DescriptorIndex.class).debug(
+				"Ignoring outdated descriptor index [" + aIndex + "]: " + aReason);
+		return false;
+	}
+
+	private static boolean exists(URL aUrl) {
+		if ("file".equals(aUrl.getProtocol())) {
+			try {
+				return new File(aUrl.toURI()).isFile();
+			}
+			catch (URISyntaxException e) {
+				return false;
+			}
+		}
+		InputStream is = null;
+		try {
+			is = aUrl.openStream();
+			return true;
+		}
+		catch (IOException e) {
+			return false;
+		}
+		finally {
+			IOUtils.closeQuietly(is);
+		}
+	}
+
+	/**
+	 * Get the manifests on the class path as sorted {@code kind digest} pairs and collect the
+	 * class path entries containing them keyed by the digest of their manifest. Entries containing
+	 * both manifests are listed under both digests. Digests shared by several entries are mapped to
+	 * {@code null}, so descriptors in such entries are looked up by name.
+	 */
+	private static List<String> getManifests(ClassLoader aClassLoader, Map<String, String> aRoots)
+			throws IOException {
+		List<String> manifests = new ArrayList<String>();
+		for (String kind : new String[] { TYPES, FS_INDEXES }) {
+			String name = getManifestName(kind);
+			Enumeration<URL> urls = aClassLoader.getResources(name);
+			while (urls.hasMoreElements()) {
+				URL url = urls.nextElement();
+				String digest = digest(kind, url);
+				String location = url.toString();
+				String root = location.substring(0, location.length() - name.length());
+				manifests.add(kind + " " + digest);
+				aRoots.put(digest, aRoots.containsKey(digest) ? null : root);
+			}
+		}
+		Collections.sort(manifests);
+		return manifests;
+	}
+
+	private static String getManifestName(String aKind) {
+		String pattern = TYPES.equals(aKind) ? TypeSystemDescriptionFactory.TYPE_MANIFEST_PATTERN
+				: FsIndexFactory.FS_INDEX_MANIFEST_PATTERN;
+		return pattern.substring(pattern.indexOf(':') + 1);
+	}
+
+	/**
+	 * Calculate the digest of a manifest. The kind is included, so a type manifest and an index
+	 * manifest with the same patterns have different digests.
+	 */
+	private static String digest(String aKind, URL aManifest) throws IOException {
+		InputStream is = null;
+		try {
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			digest.update(aKind.getBytes("UTF-8"));
+			is = aManifest.openStream();
+			digest.update(IOUtils.toByteArray(is));
+			StringBuilder sb = new StringBuilder();
+			for (byte b : digest.digest()) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		finally {
+			IOUtils.closeQuietly(is);
+		}
+	}
+
+	/**
+	 * Resolve the type and index manifests on the default class path and write the index to
+	 * {@link #INDEX_LOCATION} below the given directory. The import pattern system properties are
+	 * not considered. An existing index is overwritten.
+	 *
+	 * @param aOutputDirectory
+	 *            the root directory of the class path entry the index is generated for, e.g.
+	 *            {@code target/classes}.
+	 * @return the index file.
+	 * @throws IOException
+	 *             if a descriptor is not located on the class path or if the index cannot be
+	 *             written.
+	 */
+	public static File write(File aOutputDirectory) throws IOException,
+			ResourceInitializationException {
+		ClassLoader cl = ClassUtils.getDefaultClassLoader();
+		List<String> dirRoots = getRoots(cl);
+		Map<String, String> roots = new HashMap<String, String>();
+		List<String> manifests = getManifests(cl, roots);
+
+		// Look up the digest by class path entry, entries with both manifests use either one
+		Map<String, String> digests = new HashMap<String, String>();
+		for (Map.Entry<String, String> e : roots.entrySet()) {
+			if (e.getValue() != null) {
+				digests.put(e.getValue(), e.getKey());
+			}
+		}
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("# Generated by uimaFIT - do not edit\n");
+		for (String manifest : manifests) {
+			sb.append(MANIFEST).append(' ').append(manifest).append('\n');
+		}
+		append(sb, TYPES, digests, dirRoots, resolve(readManifests(
+				TypeSystemDescriptionFactory.TYPE_MANIFEST_PATTERN).toArray(new String[0])));
+		append(sb, FS_INDEXES, digests, dirRoots, resolve(readManifests(
+				FsIndexFactory.FS_INDEX_MANIFEST_PATTERN).toArray(new String[0])));
+
+		File file = new File(aOutputDirectory, INDEX_LOCATION);
+		file.getParentFile().mkdirs();
+		OutputStream os = null;
+		try {
+			os = new FileOutputStream(file);
+			os.write(sb.toString().getBytes("UTF-8"));
+		}
+		finally {
+			IOUtils.closeQuietly(os);
+		}
+		return file;
+	}
+
+	private static void append(StringBuilder aBuffer, String aKind, Map<String, String> aDigests,
+			List<String> aRoots, String[] aLocations) throws IOException {
+		// Sorted so the index does not change unless the descriptors do
+		Set<String> entries = new TreeSet<String>();
+		for (String location : aLocations) {
+			entries.add(getEntry(aDigests, aRoots, location));
+		}
+		for (String entry : entries) {
+			aBuffer.append(aKind).append(' ').append(entry).append('\n');
+		}
+	}
+
+	/**
+	 * Get the index entry of a descriptor location: the digest of the manifest in the same class
+	 * path entry, or {@link #NO_MANIFEST}, followed by the class path name of the descriptor.
+	 */
+	private static String getEntry(Map<String, String> aDigests, List<String> aRoots,
+			String aLocation) throws IOException {
+		// The longest matching root is the class path entry actually containing the descriptor
+		String root = null;
+		for (String r : aDigests.keySet()) {
+			if (aLocation.startsWith(r) && (root == null || r.length() > root.length())) {
+				root = r;
+			}
+		}
+		if (root != null) {
+			return aDigests.get(root) + " " + aLocation.substring(root.length());
+		}
+		return NO_MANIFEST + " " + getName(aRoots, aLocation);
+	}
+
+	/**
+	 * Get the class path name of a descriptor location.
+	 */
+	private static String getName(List<String> aRoots, String aLocation) throws IOException {
+		int sep = aLocation.indexOf("!/");
+		if (sep != -1) {
+			return aLocation.substring(sep + 2);
+		}
+		for (String root : aRoots) {
+			if (aLocation.startsWith(root)) {
+				return aLocation.substring(root.length());
+			}
+		}
+		throw new IOException("Descriptor [" + aLocation + "] is not located on the class path");
+	}
+
+	/**
+	 * Get the class path directories, longest first so nested directories take precedence.
+	 */
+	private static List<String> getRoots(ClassLoader aClassLoader) throws IOException {
+		List<String> roots = new ArrayList<String>();
+		Enumeration<URL> urls = aClassLoader.getResources("");
+		while (urls.hasMoreElements()) {
+			String root = urls.nextElement().toString();
+			roots.add(root.endsWith("/") ? root : root + "/");
+		}
+		Collections.sort(roots, new Comparator<String>() {
+			public int compare(String aO1, String aO2) {
+				return aO2.length() - aO1.length();
+			}
+		});
+		return roots;
+	}
+}
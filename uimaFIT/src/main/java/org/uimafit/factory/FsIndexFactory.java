@@ -243,7 +243,8 @@ public final class FsIndexFactory {
 	/**
 	 * Get all currently accessible index descriptor locations. A scan is actually only
 	 * performed on the first call and the locations are cached. To force a re-scan use
-	 * {@link #forceIndexDescriptorsScan()}.
+	 * {@link #forceIndexDescriptorsScan()}. If a {@link DescriptorIndex} is present on the class
+	 * path, the locations are taken from it instead of scanning.
 	 *
 	 * @return an array of locations.
 	 * @throws ResourceInitializationException
@@ -251,8 +252,13 @@ public final class FsIndexFactory {
 	 */
 	public static String[] scanIndexDescriptors() throws ResourceInitializationException {
 		if (indexDescriptorLocations == null) {
-			indexDescriptorLocations = resolve(scanImportsAndManifests(FS_INDEX_MANIFEST_PATTERN,
-					FS_INDEX_IMPORT_PATTERN));
+			String[] locations = DescriptorIndex.getLocations(DescriptorIndex.FS_INDEXES,
+					FS_INDEX_IMPORT_PATTERN);
+			if (locations == null) {
+				locations = resolve(scanImportsAndManifests(FS_INDEX_MANIFEST_PATTERN,
+						FS_INDEX_IMPORT_PATTERN));
+			}
+			indexDescriptorLocations = locations;
 		}
 		return indexDescriptorLocations;
 	}
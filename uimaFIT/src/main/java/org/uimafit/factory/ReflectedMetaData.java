@@ -0,0 +1,166 @@
+/*
+ Copyright 2012
+ Ubiquitous Knowledge Processing (UKP) Lab
+ Technische Universitaet Darmstadt
+ All rights reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.uimafit.factory;
+
+import static org.uimafit.descriptor.OperationalProperties.MODIFIES_CAS_DEFAULT;
+import static org.uimafit.descriptor.OperationalProperties.MULTIPLE_DEPLOYMENT_ALLOWED_DEFAULT;
+import static org.uimafit.descriptor.OperationalProperties.OUTPUTS_NEW_CASES_DEFAULT;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.uima.resource.ExternalResourceDependency;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.Capability;
+import org.apache.uima.resource.metadata.ConfigurationParameter;
+import org.apache.uima.resource.metadata.FsIndexCollection;
+import org.apache.uima.resource.metadata.OperationalProperties;
+import org.uimafit.component.initialize.ExternalResourceInitializer;
+import org.uimafit.factory.ConfigurationParameterFactory.ConfigurationData;
+import org.uimafit.util.ReflectionUtil;
+
+/**
+ * The meta data of a component class which the factories obtain by reflection, i.e. the
+ * configuration parameters, indexes, capabilities, external resource dependencies and operational
+ * properties declared by annotations. The meta data is obtained once per class and then cached.
+ * The cache only holds on to the class weakly, so classes can still be unloaded.
+ * <p>
+ * The getters return copies of the cached meta data, so the caller may modify them.
+ *
+ * @author Richard Eckart de Castilho
+ */
+final class ReflectedMetaData {
+	private static final Map<Class<?>, ReflectedMetaData> CACHE =
+			new WeakHashMap<Class<?>, ReflectedMetaData>();
+
+	private final ConfigurationParameter[] configurationParameters;
+
+	private final Object[] configurationValues;
+
+	private final FsIndexCollection fsIndexCollection;
+
+	private final Capability capability;
+
+	private final ExternalResourceDependency[] externalResourceDependencies;
+
+	private final boolean multipleDeploymentAllowed;
+
+	private final boolean modifiesCas;
+
+	private final boolean outputsNewCases;
+
+	private ReflectedMetaData(Class<?> aClass) throws ResourceInitializationException {
+		ConfigurationData cdata = ConfigurationParameterFactory.createConfigurationData(aClass);
+		configurationParameters = cdata.configurationParameters;
+		configurationValues = cdata.configurationValues;
+
+		fsIndexCollection = FsIndexFactory.createFsIndexCollection(aClass);
+		capability = CapabilityFactory.createCapability(aClass);
+
+		Collection<ExternalResourceDependency> deps = ExternalResourceInitializer
+				.getResourceDeclarations(aClass).values();
+		externalResourceDependencies = deps.toArray(new ExternalResourceDependency[deps.size()]);
+
+		org.uimafit.descriptor.OperationalProperties anOp = ReflectionUtil
+				.getInheritableAnnotation(org.uimafit.descriptor.OperationalProperties.class,
+						aClass);
+		if (anOp != null) {
+			multipleDeploymentAllowed = anOp.multipleDeploymentAllowed();
+			modifiesCas = anOp.modifiesCas();
+			outputsNewCases = anOp.outputsNewCases();
+		}
+		else {
+			multipleDeploymentAllowed = MULTIPLE_DEPLOYMENT_ALLOWED_DEFAULT;
+			modifiesCas = MODIFIES_CAS_DEFAULT;
+			outputsNewCases = OUTPUTS_NEW_CASES_DEFAULT;
+		}
+	}
+
+	/**
+	 * Get the meta data of the given class.
+	 *
+	 * @param aClass
+	 *            the component class.
+	 * @return the meta data.
+	 */
+	static ReflectedMetaData get(Class<?> aClass) throws ResourceInitializationException {
+		synchronized (CACHE) {
+			ReflectedMetaData md = CACHE.get(aClass);
+			if (md == null) {
+				md = new ReflectedMetaData(aClass);
+				CACHE.put(aClass, md);
+			}
+			return md;
+		}
+	}
+
+	/**
+	 * Get the configuration parameters declared by the class and their default values.
+	 */
+	ConfigurationData getConfigurationData() {
+		ConfigurationParameter[] params = new ConfigurationParameter[configurationParameters.length];
+		Object[] values = new Object[configurationValues.length];
+		for (int i = 0; i < params.length; i++) {
+			params[i] = (ConfigurationParameter) configurationParameters[i].clone();
+			// Multi-valued defaults are arrays which the caller might modify
+			Object value = configurationValues[i];
+			values[i] = value instanceof Object[] ? ((Object[]) value).clone() : value;
+		}
+		return new ConfigurationData(params, values);
+	}
+
+	/**
+	 * Get the indexes declared by the class.
+	 */
+	FsIndexCollection getFsIndexCollection() {
+		return (FsIndexCollection) fsIndexCollection.clone();
+	}
+
+	/**
+	 * Get the capabilities declared by the class.
+	 *
+	 * @return the capability or {@code null} if the class does not declare any.
+	 */
+	Capability getCapability() {
+		return capability != null ? (Capability) capability.clone() : null;
+	}
+
+	/**
+	 * Get the external resources declared by the class.
+	 */
+	ExternalResourceDependency[] getExternalResourceDependencies() {
+		ExternalResourceDependency[] deps =
+				new ExternalResourceDependency[externalResourceDependencies.length];
+		for (int i = 0; i < deps.length; i++) {
+			deps[i] = (ExternalResourceDependency) externalResourceDependencies[i].clone();
+		}
+		return deps;
+	}
+
+	/**
+	 * Set the operational properties declared by the class, or the defaults if the class does not
+	 * declare any.
+	 */
+	void configure(OperationalProperties aOp) {
+		aOp.setMultipleDeploymentAllowed(multipleDeploymentAllowed);
+		aOp.setModifiesCas(modifiesCas);
+		aOp.setOutputsNewCASes(outputsNewCases);
+	}
+}
@@ -19,9 +19,17 @@ package org.uimafit.factory;
 
 import static org.apache.uima.UIMAFramework.getXMLParser;
 import static org.apache.uima.util.CasCreationUtils.mergeTypeSystems;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -61,8 +69,20 @@ public final class TypeSystemDescriptionFactory {
 	 */
 	public static final String TYPE_MANIFEST_PATTERN = "classpath*:META-INF/org.uimafit/types.txt";
 
+	/**
+	 * System property indicating a directory in which the type system found by
+	 * {@link #createTypeSystemDescription()} is cached across JVM runs. The cache is keyed by the
+	 * locations of the type descriptors found via the manifests and the
+	 * {@link #TYPE_IMPORT_PATTERN} together with their size and modification time, so it is
+	 * rebuilt if a descriptor is added, removed or changed. The descriptors are still located on
+	 * each run, only parsing and merging them is avoided.
+	 */
+	public static final String TYPE_CACHE_DIRECTORY = "org.uimafit.type.cache_dir";
+
 	private static String[] typeDescriptorLocations;
 
+	private static volatile TypeSystemDescription typeSystemDescription;
+
 	/**
 	 * Creates a TypeSystemDescription from a list of classes belonging to a type system - i.e.
 	 * classes generated by JCasGen. It is expected that for each of the classes passed to this
@@ -137,12 +157,34 @@ public final class TypeSystemDescriptionFactory {
 	/**
 	 * Creates a {@link TypeSystemDescription} from all type descriptions that can be found via the
 	 * {@link #TYPE_IMPORT_PATTERN} or via the {@code META-INF/org.uimafit/types.txt} files in the
-	 * classpath.
+	 * classpath. The type system is only built once and then cached, see also
+	 * {@link #TYPE_CACHE_DIRECTORY}.
 	 *
 	 * @return the auto-scanned type system.
 	 */
 	public static TypeSystemDescription createTypeSystemDescription()
 			throws ResourceInitializationException {
+		// The type system is only built on the first call. Callers get a copy which they may
+		// modify.
+		TypeSystemDescription tsd = typeSystemDescription;
+		if (tsd == null) {
+			File cacheFile = getCacheFile();
+			if (cacheFile != null && cacheFile.isFile()) {
+				tsd = readCachedTypeSystemDescription(cacheFile);
+			}
+			if (tsd == null) {
+				tsd = scanTypeSystemDescription();
+				if (cacheFile != null) {
+					writeCachedTypeSystemDescription(cacheFile, tsd);
+				}
+			}
+			typeSystemDescription = tsd;
+		}
+		return (TypeSystemDescription) tsd.clone();
+	}
+
+	private static TypeSystemDescription scanTypeSystemDescription()
+			throws ResourceInitializationException {
 		List<TypeSystemDescription> tsdList = new ArrayList<TypeSystemDescription>();
 		for (String location : scanTypeDescriptors()) {
 			try {
@@ -163,10 +205,121 @@ public final class TypeSystemDescriptionFactory {
 		return mergeTypeSystems(tsdList);
 	}
 
+	/**
+	 * Get the file caching the type system for the current class path.
+	 *
+	 * @return the file or {@code null} if the type system cannot be cached.
+	 */
+	private static File getCacheFile() throws ResourceInitializationException {
+		String dir = System.getProperty(TYPE_CACHE_DIRECTORY);
+		if (dir == null || dir.length() == 0) {
+			return null;
+		}
+		String fingerprint = fingerprint(scanTypeDescriptors());
+		if (fingerprint == null) {
+			return null;
+		}
+		return new File(dir, "uimafit-types-" + fingerprint + ".xml");
+	}
+
+	/**
+	 * Calculate a fingerprint of the given descriptor locations. Descriptors are identified by
+	 * their location, size and modification time. For descriptors within a JAR file, the size and
+	 * modification time of the JAR file are used.
+	 *
+	 * @param aLocations
+	 *            the descriptor locations.
+	 * @return the fingerprint or {@code null} if it cannot be calculated.
+	 */
+	static String fingerprint(String[] aLocations) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			for (String location : new TreeSet<String>(Arrays.asList(aLocations))) {
+				digest.update(("\n" + location + "|" + stamp(location)).getBytes("UTF-8"));
+			}
+			StringBuilder sb = new StringBuilder();
+			for (byte b : digest.digest()) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+		catch (UnsupportedEncodingException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Get the size and modification time of the file containing the given descriptor.
+	 */
+	private static String stamp(String aLocation) {
+		try {
+			URL url = new URL(aLocation);
+			if ("jar".equals(url.getProtocol())) {
+				String path = url.getPath();
+				int sep = path.indexOf("!/");
+				url = new URL(sep != -1 ? path.substring(0, sep) : path);
+			}
+			if ("file".equals(url.getProtocol())) {
+				File file = new File(url.toURI());
+				return file.length() + "|" + file.lastModified();
+			}
+			URLConnection connection = url.openConnection();
+			return connection.getContentLength() + "|" + connection.getLastModified();
+		}
+		catch (IOException e) {
+			return "";
+		}
+		catch (URISyntaxException e) {
+			return "";
+		}
+	}
+
+	private static TypeSystemDescription readCachedTypeSystemDescription(File aFile) {
+		try {
+			return getXMLParser().parseTypeSystemDescription(new XMLInputSource(aFile));
+		}
+		catch (Exception e) {
+			LogFactory.getLog(TypeSystemDescription.class).warn(
+					"Unable to read cached type system from [" + aFile + "]. Ignoring.", e);
+			return null;
+		}
+	}
+
+	private static void writeCachedTypeSystemDescription(File aFile, TypeSystemDescription aTsd) {
+		// Write to a temporary file first, so other processes never see a partial file
+		File tmp = null;
+		OutputStream os = null;
+		try {
+			aFile.getParentFile().mkdirs();
+			tmp = File.createTempFile("uimafit-types-", ".tmp", aFile.getParentFile());
+			os = new FileOutputStream(tmp);
+			aTsd.toXML(os);
+			os.close();
+			os = null;
+			if (!tmp.renameTo(aFile)) {
+				tmp.delete();
+			}
+		}
+		catch (Exception e) {
+			LogFactory.getLog(TypeSystemDescription.class).warn(
+					"Unable to cache type system in [" + aFile + "]. Ignoring.", e);
+			if (tmp != null) {
+				tmp.delete();
+			}
+		}
+		finally {
+			IOUtils.closeQuietly(os);
+		}
+	}
+
 	/**
 	 * Get all currently accessible type system descriptor locations. A scan is actually only
 	 * performed on the first call and the locations are cached. To force a re-scan use
-	 * {@link #forceTypeDescriptorsScan()}.
+	 * {@link #forceTypeDescriptorsScan()}. If a {@link DescriptorIndex} is present on the class
+	 * path, the locations are taken from it instead of scanning.
 	 *
 	 * @return an array of locations.
 	 * @throws ResourceInitializationException
@@ -174,18 +327,25 @@ public final class TypeSystemDescriptionFactory {
 	 */
 	public static String[] scanTypeDescriptors() throws ResourceInitializationException {
 		if (typeDescriptorLocations == null) {
-			typeDescriptorLocations = resolve(scanImportsAndManifests(TYPE_MANIFEST_PATTERN,
-					TYPE_IMPORT_PATTERN));
+			String[] locations = DescriptorIndex.getLocations(DescriptorIndex.TYPES,
+					TYPE_IMPORT_PATTERN);
+			if (locations == null) {
+				locations = resolve(scanImportsAndManifests(TYPE_MANIFEST_PATTERN,
+						TYPE_IMPORT_PATTERN));
+			}
+			typeDescriptorLocations = locations;
 		}
 		return typeDescriptorLocations;
 	}
 
 	/**
 	 * Force rescan of type descriptors. The next call to {@link #scanTypeDescriptors()} will rescan
-	 * all auto-import locations.
+	 * all auto-import locations and the next call to {@link #createTypeSystemDescription()} will
+	 * build the type system again.
 	 */
 	public static void forceTypeDescriptorsScan() {
 		typeDescriptorLocations = null;
+		typeSystemDescription = null;
 	}
 
 	/**
@@ -203,6 +363,17 @@ public final class TypeSystemDescriptionFactory {
 		patterns.addAll(Arrays.asList(System.getProperty(importProperty, "").split(";")));
 
 		// Scan manifest
+		patterns.addAll(readManifests(manifestPatterns));
+
+		return patterns.toArray(new String[patterns.size()]);
+	}
+
+	/**
+	 * Read the patterns listed in the manifests found at the given locations.
+	 */
+	static List<String> readManifests(String manifestPatterns)
+			throws ResourceInitializationException {
+		List<String> patterns = new ArrayList<String>();
 		for (String mfUrl : resolve(manifestPatterns)) {
 			InputStream is = null;
 			try {
@@ -218,8 +389,7 @@ public final class TypeSystemDescriptionFactory {
 				IOUtils.closeQuietly(is);
 			}
 		}
-
-		return patterns.toArray(new String[patterns.size()]);
+		return patterns;
 	}
 
 	/**
@@ -22,6 +22,10 @@ import static org.uimafit.factory.AnalysisEngineFactory.createAggregateDescripti
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.uima.UIMAException;
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
@@ -32,6 +36,8 @@ import org.apache.uima.collection.CollectionReaderDescription;
 import org.apache.uima.collection.EntityProcessStatus;
 import org.apache.uima.collection.StatusCallbackListener;
 import org.apache.uima.collection.metadata.CpeDescriptorException;
+import org.apache.uima.util.ProcessTrace;
+import org.apache.uima.util.ProcessTraceEvent;
 import org.uimafit.factory.CpeBuilder;
 import org.xml.sax.SAXException;
 
@@ -52,6 +58,27 @@ public class CpePipeline {
 	public static void runPipeline(final CollectionReaderDescription readerDesc,
 			final AnalysisEngineDescription... descs) throws UIMAException, SAXException,
 			CpeDescriptorException, IOException {
+		runPipeline(readerDesc, null, descs);
+	}
+
+	/**
+	 * Run the CollectionReader and AnalysisEngines as a multi-threaded pipeline while reporting
+	 * the time spent in each engine to the given listener. The times are taken from the
+	 * {@link ProcessTrace} the CPE records for each document and thus have a resolution of one
+	 * millisecond. The CPE does not record the time spent in the reader per document, so
+	 * {@link PipelineListener#documentRead(CAS, long)} is not called.
+	 *
+	 * @param readerDesc
+	 *            The CollectionReader that loads the documents into the CAS.
+	 * @param listener
+	 *            the listener receiving the timings, e.g. a {@link PipelineStatistics}. May be
+	 *            {@code null}.
+	 * @param descs
+	 *            Primitive AnalysisEngineDescriptions that process the CAS, in order.
+	 */
+	public static void runPipeline(final CollectionReaderDescription readerDesc,
+			final PipelineListener listener, final AnalysisEngineDescription... descs)
+			throws UIMAException, SAXException, CpeDescriptorException, IOException {
 		// Create AAE
 		final AnalysisEngineDescription aaeDesc = createAggregateDescription(descs);
 
@@ -59,45 +86,129 @@ public class CpePipeline {
 		builder.setReader(readerDesc);
 		builder.setAnalysisEngine(aaeDesc);
 		
-		StatusCallbackListenerImpl status = new StatusCallbackListenerImpl();
+		StatusCallbackListenerImpl status = new StatusCallbackListenerImpl(listener);
 		CollectionProcessingEngine engine = builder.createCpe(status);
 		
 		engine.process();
-		try {
-			synchronized (status) {
-				while (status.isProcessing) {
-					status.wait();
+		status.await();
+
+		if (status.exceptions.size() > 0) {
+			throw new AnalysisEngineProcessException(status.exceptions.get(0));
+		}
+	}
+
+	/**
+	 * Run the pipeline configured in the given builder. Unlike the other methods, this method does
+	 * not throw an exception if processing fails. Instead, the result reports the number of
+	 * processed and failed documents, the exceptions and whether the CPE has been aborted.
+	 * <p>
+	 * How failing documents are handled is configured in the builder, see
+	 * {@link CpeBuilder#setErrorThreshold(int, int, String)} and
+	 * {@link CpeBuilder#setDeadLetterDirectory(java.io.File)}.
+	 *
+	 * @param builder
+	 *            the builder with the reader and analysis engine set.
+	 * @param progress
+	 *            the listener receiving progress reports. May be {@code null}.
+	 * @param interval
+	 *            the time between two progress reports in milliseconds. If this is 0, progress is
+	 *            only reported when the pipeline is complete.
+	 * @return the result of the run.
+	 */
+	public static CpePipelineResult runPipeline(final CpeBuilder builder,
+			final CpeProgressListener progress, final long interval) throws UIMAException,
+			CpeDescriptorException {
+		final PipelineStatistics statistics = new PipelineStatistics();
+		final StatusCallbackListenerImpl status = new StatusCallbackListenerImpl(statistics);
+		final CollectionProcessingEngine engine = builder.createCpe(status);
+
+		Timer timer = null;
+		if (progress != null && interval > 0) {
+			timer = new Timer("CpePipeline progress", true);
+			timer.schedule(new TimerTask() {
+				@Override
+				public void run() {
+					progress.progress(status.getResult(statistics, null));
 				}
-			}
+			}, interval, interval);
 		}
-		catch (InterruptedException e) {
-			// Do nothing
+
+		try {
+			status.start();
+			engine.process();
+			status.await();
+		}
+		finally {
+			if (timer != null) {
+				timer.cancel();
+			}
 		}
 
-		if (status.exceptions.size() > 0) {
-			throw new AnalysisEngineProcessException(status.exceptions.get(0));
+		CpePipelineResult result = status.getResult(statistics, engine.getPerformanceReport());
+		if (progress != null) {
+			progress.progress(result);
 		}
+		return result;
 	}
 
 	private static class StatusCallbackListenerImpl
 		implements StatusCallbackListener
 	{
 
-		private final List<Exception> exceptions = new ArrayList<Exception>();
+		private final List<Exception> exceptions = new CopyOnWriteArrayList<Exception>();
+		private final PipelineListener listener;
+		private final AtomicLong processed = new AtomicLong();
+		private final AtomicLong failed = new AtomicLong();
+		private final AtomicLong batches = new AtomicLong();
+		private long startTime = System.currentTimeMillis();
 		private boolean isProcessing = true;
+		private boolean isAborted = false;
+
+		public StatusCallbackListenerImpl(PipelineListener aListener)
+		{
+			listener = aListener;
+		}
 	
 		public void entityProcessComplete(CAS arg0, EntityProcessStatus arg1)
 		{
 			if (arg1.isException()) {
+				failed.incrementAndGet();
 				for (Exception e : arg1.getExceptions()) {
 					exceptions.add(e);
 				}
 			}
+			else {
+				processed.incrementAndGet();
+			}
+
+			if (!arg1.isException() && listener != null) {
+				if (arg1.getProcessTrace() != null) {
+					report(arg1.getProcessTrace().getEvents());
+				}
+				listener.documentProcessed(arg0);
+			}
+		}
+
+		/**
+		 * Report the analysis events without sub-events, so the time spent in a delegate is not
+		 * counted again for the aggregate containing it.
+		 */
+		private void report(List<ProcessTraceEvent> aEvents)
+		{
+			for (ProcessTraceEvent e : aEvents) {
+				if (!e.getSubEvents().isEmpty()) {
+					report(e.getSubEvents());
+				}
+				else if (ProcessTraceEvent.ANALYSIS.equalsIgnoreCase(e.getType())) {
+					listener.componentProcessed(e.getComponentName(), e.getDuration() * 1000000L);
+				}
+			}
 		}
 	
 		public void aborted()
 		{
 			synchronized (this) {
+				isAborted = true;
 				if (isProcessing) {
 					isProcessing = false;
 					notify();
@@ -107,11 +218,14 @@ public class CpePipeline {
 	
 		public void batchProcessComplete()
 		{
-			// Do nothing
+			batches.incrementAndGet();
 		}
 	
 		public void collectionProcessComplete()
 		{
+			if (listener != null) {
+				listener.collectionProcessComplete();
+			}
 			synchronized (this) {
 				if (isProcessing) {
 					isProcessing = false;
@@ -120,6 +234,33 @@ public class CpePipeline {
 			}
 		}
 	
+		public synchronized void start()
+		{
+			startTime = System.currentTimeMillis();
+		}
+
+		public void await()
+		{
+			try {
+				synchronized (this) {
+					while (isProcessing) {
+						wait();
+					}
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		public synchronized CpePipelineResult getResult(PipelineStatistics aStatistics,
+				ProcessTrace aPerformanceReport)
+		{
+			return new CpePipelineResult(processed.get(), failed.get(), batches.get(),
+					System.currentTimeMillis() - startTime, !isProcessing, isAborted,
+					new ArrayList<Exception>(exceptions), aStatistics, aPerformanceReport);
+		}
+
 		public void initializationComplete()
 		{
 			// Do nothing
@@ -0,0 +1,146 @@
+/*
+ Copyright 2012
+ Ubiquitous Knowledge Processing (UKP) Lab
+ Technische Universitaet Darmstadt
+ All rights reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.uimafit.pipeline;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.uima.util.ProcessTrace;
+
+/**
+ * Outcome of a pipeline run by {@link CpePipeline}. Progress reports during the run use the same
+ * class; they do not have a {@link #getPerformanceReport() performance report}.
+ *
+ * @author Richard Eckart de Castilho
+ */
+public class CpePipelineResult {
+	private final long processed;
+
+	private final long failed;
+
+	private final long batches;
+
+	private final long elapsedMillis;
+
+	private final boolean complete;
+
+	private final boolean aborted;
+
+	private final List<Exception> exceptions;
+
+	private final PipelineStatistics statistics;
+
+	private final ProcessTrace performanceReport;
+
+	CpePipelineResult(long aProcessed, long aFailed, long aBatches, long aElapsedMillis,
+			boolean aComplete, boolean aAborted, List<Exception> aExceptions,
+			PipelineStatistics aStatistics, ProcessTrace aPerformanceReport) {
+		processed = aProcessed;
+		failed = aFailed;
+		batches = aBatches;
+		elapsedMillis = aElapsedMillis;
+		complete = aComplete;
+		aborted = aAborted;
+		exceptions = Collections.unmodifiableList(aExceptions);
+		statistics = aStatistics;
+		performanceReport = aPerformanceReport;
+	}
+
+	/**
+	 * Get the number of documents which have been processed successfully.
+	 */
+	public long getProcessedCount() {
+		return processed;
+	}
+
+	/**
+	 * Get the number of documents for which processing failed.
+	 */
+	public long getFailedCount() {
+		return failed;
+	}
+
+	/**
+	 * Get the number of batches which have been completed.
+	 */
+	public long getBatchCount() {
+		return batches;
+	}
+
+	/**
+	 * Get the time since the CPE has been started in milliseconds.
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * Get the number of documents processed successfully per second.
+	 */
+	public double getDocumentsPerSecond() {
+		return elapsedMillis > 0 ? processed * 1000.0 / elapsedMillis : 0;
+	}
+
+	/**
+	 * Check if the run is over, either because the collection has been processed or because the
+	 * CPE has been aborted.
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * Check if the CPE has been aborted, e.g. because the error threshold has been exceeded.
+	 */
+	public boolean isAborted() {
+		return aborted;
+	}
+
+	/**
+	 * Get the exceptions which occurred during processing, in the order they have been reported.
+	 */
+	public List<Exception> getExceptions() {
+		return exceptions;
+	}
+
+	/**
+	 * Get the processing times of the components per document. These are taken from the
+	 * {@link ProcessTrace} of each document and have a resolution of one millisecond.
+	 */
+	public PipelineStatistics getStatistics() {
+		return statistics;
+	}
+
+	/**
+	 * Get the performance report of the CPE, which aggregates the processing times of all
+	 * components over the whole run.
+	 *
+	 * @return the report or {@code null} if the run is not complete.
+	 */
+	public ProcessTrace getPerformanceReport() {
+		return performanceReport;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d processed, %d failed in %.1f s (%.1f docs/s)%s", processed,
+				failed, elapsedMillis / 1000.0, getDocumentsPerSecond(), aborted ? ", aborted"
+						: "");
+	}
+}
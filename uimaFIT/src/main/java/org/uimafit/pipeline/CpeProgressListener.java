@@ -0,0 +1,35 @@
+/*
+ Copyright 2012
+ Ubiquitous Knowledge Processing (UKP) Lab
+ Technische Universitaet Darmstadt
+ All rights reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.uimafit.pipeline;
+
+/**
+ * Receives periodic progress reports from {@link CpePipeline}.
+ *
+ * @author Richard Eckart de Castilho
+ */
+public interface CpeProgressListener {
+	/**
+	 * Report the progress of the pipeline. This is called periodically from a timer thread while
+	 * the pipeline runs and once from the calling thread when it is complete.
+	 *
+	 * @param aProgress
+	 *            the current state of the pipeline.
+	 */
+	void progress(CpePipelineResult aProgress);
+}
@@ -25,6 +25,7 @@ import java.util.List;
 import org.apache.uima.UIMAException;
 import org.apache.uima.analysis_engine.AnalysisEngine;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.CASException;
 import org.apache.uima.collection.CollectionException;
 import org.apache.uima.collection.CollectionReader;
 import org.apache.uima.jcas.JCas;
@@ -49,6 +50,8 @@ public class JCasIterable implements Iterator<JCas>, Iterable<JCas> {
 
 	private JCas jCas;
 
+	private PrefetchingReader prefetcher;
+
 	/**
 	 * Iterate over the documents loaded by the CollectionReader. (Uses an JCasAnnotatorAdapter to
 	 * create the document JCas.)
@@ -85,13 +88,48 @@ public class JCasIterable implements Iterator<JCas>, Iterable<JCas> {
 		this.jCas = CasCreationUtils.createCas(metaData).getJCas();
 	}
 
+	/**
+	 * Iterate over the documents loaded by the CollectionReader, running the AnalysisEngine on each
+	 * one before yielding them. The given number of documents is read ahead on a background thread
+	 * while the current document is processed. The JCas returned by {@link #next()} is only valid
+	 * until the next call to {@link #next()}.
+	 *
+	 * @param aPrefetch
+	 *            The number of documents to read ahead.
+	 * @param aReader
+	 *            The CollectionReader for loading documents.
+	 * @param aEngines
+	 *            The AnalysisEngines for processing documents.
+	 * @see PrefetchingReader
+	 */
+	public JCasIterable(final int aPrefetch, final CollectionReader aReader,
+			final AnalysisEngine... aEngines) throws UIMAException, IOException {
+		this.collectionReader = aReader;
+		this.analysisEngines = aEngines;
+		final ResourceMetaData[] metaData = new ResourceMetaData[aEngines.length];
+		for (int i = 0; i < aEngines.length; i++) {
+			metaData[i] = aEngines[i].getMetaData();
+		}
+		this.prefetcher = new PrefetchingReader(aReader, aPrefetch, metaData);
+	}
+
 	public Iterator<JCas> iterator() {
 		return this;
 	}
 
 	public boolean hasNext() {
+		// The prefetching thread is stopped once the collection is exhausted or reading fails.
+		boolean done = true;
 		try {
-			return this.collectionReader.hasNext();
+			boolean more;
+			if (this.prefetcher != null) {
+				more = this.prefetcher.hasNext();
+			}
+			else {
+				more = this.collectionReader.hasNext();
+			}
+			done = !more;
+			return more;
 		}
 		catch (CollectionException e) {
 			throw new IllegalStateException(e);
@@ -99,15 +137,31 @@ public class JCasIterable implements Iterator<JCas>, Iterable<JCas> {
 		catch (IOException e) {
 			throw new IllegalStateException(e);
 		}
+		finally {
+			if (done) {
+				closePrefetcher();
+			}
+		}
 	}
 
 	public JCas next() {
-		this.jCas.reset();
+		boolean failed = true;
 		try {
-			this.collectionReader.getNext(this.jCas.getCas());
+			if (this.prefetcher != null) {
+				if (this.jCas != null) {
+					this.prefetcher.release(this.jCas.getCas());
+					this.jCas = null;
+				}
+				this.jCas = this.prefetcher.next().getJCas();
+			}
+			else {
+				this.jCas.reset();
+				this.collectionReader.getNext(this.jCas.getCas());
+			}
 			for (AnalysisEngine engine : this.analysisEngines) {
 				engine.process(this.jCas);
 			}
+			failed = false;
 		}
 		catch (CollectionException e) {
 			throw new IllegalStateException(e);
@@ -118,9 +172,23 @@ public class JCasIterable implements Iterator<JCas>, Iterable<JCas> {
 		catch (AnalysisEngineProcessException e) {
 			throw new IllegalStateException(e);
 		}
+		catch (CASException e) {
+			throw new IllegalStateException(e);
+		}
+		finally {
+			if (failed) {
+				closePrefetcher();
+			}
+		}
 		return this.jCas;
 	}
 
+	private void closePrefetcher() {
+		if (this.prefetcher != null) {
+			this.prefetcher.close();
+		}
+	}
+
 	public void remove() {
 		throw new UnsupportedOperationException();
 	}
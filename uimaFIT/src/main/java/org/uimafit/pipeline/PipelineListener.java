@@ -0,0 +1,63 @@
+/*
+ Copyright 2012
+ Ubiquitous Knowledge Processing (UKP) Lab
+ Technische Universitaet Darmstadt
+ All rights reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.uimafit.pipeline;
+
+import org.apache.uima.cas.CAS;
+
+/**
+ * Receives timing information while a pipeline runs. Implementations must be thread-safe if the
+ * pipeline processes documents on multiple threads.
+ *
+ * @author Richard Eckart de Castilho
+ * @see PipelineStatistics
+ */
+public interface PipelineListener {
+	/**
+	 * A document has been read by the collection reader.
+	 *
+	 * @param aCas
+	 *            the CAS the document has been read into.
+	 * @param aNanos
+	 *            the time spent in the reader in nanoseconds.
+	 */
+	void documentRead(CAS aCas, long aNanos);
+
+	/**
+	 * A component has processed a document.
+	 *
+	 * @param aComponentName
+	 *            the name of the component.
+	 * @param aNanos
+	 *            the time spent in the component in nanoseconds.
+	 */
+	void componentProcessed(String aComponentName, long aNanos);
+
+	/**
+	 * A document has been processed by all components.
+	 *
+	 * @param aCas
+	 *            the processed CAS.
+	 */
+	void documentProcessed(CAS aCas);
+
+	/**
+	 * All documents of the collection have been processed.
+	 */
+	void collectionProcessComplete();
+}
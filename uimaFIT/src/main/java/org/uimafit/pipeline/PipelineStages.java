@@ -0,0 +1,213 @@
+/*
+ Copyright 2012
+ Ubiquitous Knowledge Processing (UKP) Lab
+ Technische Universitaet Darmstadt
+ All rights reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.uimafit.pipeline;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.cas.CAS;
+
+/**
+ * Runs each analysis engine on its own thread. The stages are connected by queues through which
+ * the CASes obtained from a {@link PrefetchingReader} are handed on in order. The queues
+ * themselves are unbounded; the number of CASes in them is only bounded by the CAS pool of the
+ * reader, because a CAS can only enter the pipeline after another has been
+ * {@link #release(CAS) released}. So if one stage is slower than the others, the CASes accumulate
+ * in front of it until the pool is exhausted and then the reader waits. Processed CASes are
+ * obtained from {@link #take()} and must be handed back via {@link #release(CAS)}.
+ * <p>
+ * If any stage fails, all stages are stopped and the exception is re-thrown by {@link #take()}.
+ *
+ * @author Richard Eckart de Castilho
+ */
+class PipelineStages {
+	/**
+	 * Marks the end of the collection in the queues.
+	 */
+	private static final Object END = new Object();
+
+	private final PrefetchingReader source;
+
+	private final AnalysisEngine[] engines;
+
+	/**
+	 * Queue i holds the output of stage i and, except for the last queue, the input of stage i+1.
+	 * Queue entries are CASes followed by {@link #END}. The last queue may also receive the
+	 * {@link Throwable} that stopped the stages.
+	 */
+	private final BlockingQueue<Object>[] queues;
+
+	private final Thread[] threads;
+
+	private final AtomicBoolean failed = new AtomicBoolean();
+
+	private boolean finished;
+
+	/**
+	 * Start the stages.
+	 *
+	 * @param aSource
+	 *            the reader providing the CASes.
+	 * @param aEngines
+	 *            the engines, one per stage.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	PipelineStages(final PrefetchingReader aSource, final AnalysisEngine... aEngines) {
+		source = aSource;
+		engines = aEngines;
+
+		queues = new BlockingQueue[engines.length];
+		threads = new Thread[engines.length];
+		for (int i = 0; i < engines.length; i++) {
+			queues[i] = new LinkedBlockingQueue<Object>();
+			final int stage = i;
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					runStage(stage);
+				}
+			}, "PipelineStage-" + i + "-" + engines[i].getMetaData().getName());
+			threads[i].setDaemon(true);
+		}
+		for (Thread t : threads) {
+			t.start();
+		}
+	}
+
+	private void runStage(final int aStage) {
+		try {
+			while (true) {
+				Object item = input(aStage);
+				if (item == END) {
+					queues[aStage].put(END);
+					return;
+				}
+
+				CAS cas = (CAS) item;
+				try {
+					engines[aStage].process(cas);
+				}
+				catch (Throwable e) {
+					source.release(cas);
+					throw e;
+				}
+				queues[aStage].put(cas);
+			}
+		}
+		catch (InterruptedException e) {
+			// Stopped
+		}
+		catch (Throwable e) {
+			fail(e);
+		}
+	}
+
+	private Object input(final int aStage) throws InterruptedException, UIMAException,
+			IOException {
+		if (aStage > 0) {
+			return queues[aStage - 1].take();
+		}
+		return source.hasNext() ? source.next() : END;
+	}
+
+	private void fail(final Throwable aCause) {
+		// Only the first failure is reported, the other stages are just stopped
+		if (failed.compareAndSet(false, true)) {
+			queues[queues.length - 1].add(aCause);
+			source.close();
+			for (Thread t : threads) {
+				if (t != Thread.currentThread()) {
+					t.interrupt();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get the next processed CAS. Waits until a CAS has passed all stages.
+	 *
+	 * @return the CAS or {@code null} if all CASes provided by the reader have been processed.
+	 */
+	CAS take() throws UIMAException, IOException {
+		if (finished) {
+			return null;
+		}
+
+		Object item;
+		try {
+			if (queues.length == 0) {
+				item = source.hasNext() ? source.next() : END;
+			}
+			else {
+				item = queues[queues.length - 1].take();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			close();
+			throw new IllegalStateException("Interrupted while waiting for the pipeline", e);
+		}
+
+		if (item instanceof CAS) {
+			return (CAS) item;
+		}
+
+		finished = true;
+		if (item instanceof Throwable) {
+			SimplePipeline.rethrow((Throwable) item);
+		}
+		return null;
+	}
+
+	/**
+	 * Reset a CAS obtained from {@link #take()} and make it available for further documents.
+	 */
+	void release(final CAS aCas) {
+		source.release(aCas);
+	}
+
+	/**
+	 * Stop all stages and the reader. Waits until all stage threads have terminated, so no engine
+	 * is still processing a CAS when this method returns.
+	 */
+	void close() {
+		finished = true;
+		source.close();
+		for (Thread t : threads) {
+			t.interrupt();
+		}
+		boolean interrupted = false;
+		for (Thread t : threads) {
+			while (t.isAlive()) {
+				try {
+					t.join();
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,266 @@
+/*
+ Copyright 2012
+ Ubiquitous Knowledge Processing (UKP) Lab
+ Technische Universitaet Darmstadt
+ All rights reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.uimafit.pipeline;
+
+import java.util.Collections;
+import java.util.Formatter;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.FSIterator;
+import org.apache.uima.cas.FeatureStructure;
+import org.apache.uima.util.Level;
+
+/**
+ * Collects timing and size statistics of a pipeline in memory. For the reader and each component,
+ * the processing times are recorded in a {@link Histogram}. For each processed document, the
+ * number of indexed feature structures in all views and the length of the document text are
+ * recorded. When the collection process is complete, a {@link #getReport() report} is logged at
+ * level INFO.
+ * <p>
+ * All methods are thread-safe.
+ *
+ * @author Richard Eckart de Castilho
+ */
+public class PipelineStatistics implements PipelineListener {
+	/**
+	 * Name under which the reader timings are reported.
+	 */
+	public static final String READER = "<reader>";
+
+	private final Map<String, Histogram> timings = new LinkedHashMap<String, Histogram>();
+
+	private final Histogram featureStructures = new Histogram();
+
+	private final Histogram textLength = new Histogram();
+
+	private long start = -1;
+
+	private long end = -1;
+
+	public synchronized void documentRead(final CAS aCas, final long aNanos) {
+		started(aNanos);
+		getOrCreate(READER).add(aNanos);
+	}
+
+	public synchronized void componentProcessed(final String aComponentName, final long aNanos) {
+		started(aNanos);
+		getOrCreate(aComponentName).add(aNanos);
+	}
+
+	public void documentProcessed(final CAS aCas) {
+		// Count outside the lock, this is the expensive part
+		long fsCount = countFeatureStructures(aCas);
+		String text = aCas.getDocumentText();
+		synchronized (this) {
+			started(0);
+			featureStructures.add(fsCount);
+			textLength.add(text != null ? text.length() : 0);
+		}
+	}
+
+	public void collectionProcessComplete() {
+		synchronized (this) {
+			end = System.nanoTime();
+		}
+		UIMAFramework.getLogger(PipelineStatistics.class).log(Level.INFO, getReport());
+	}
+
+	/**
+	 * Get the processing times of the given component in nanoseconds. The reader is reported as
+	 * {@link #READER}.
+	 *
+	 * @return the histogram or {@code null} if the component has not been seen.
+	 */
+	public synchronized Histogram getTiming(final String aComponentName) {
+		Histogram h = timings.get(aComponentName);
+		return h != null ? h.copy() : null;
+	}
+
+	/**
+	 * Get the processing times of all components in the order they have been seen first.
+	 */
+	public synchronized Map<String, Histogram> getTimings() {
+		Map<String, Histogram> copy = new LinkedHashMap<String, Histogram>();
+		for (Map.Entry<String, Histogram> e : timings.entrySet()) {
+			copy.put(e.getKey(), e.getValue().copy());
+		}
+		return Collections.unmodifiableMap(copy);
+	}
+
+	/**
+	 * Get the number of indexed feature structures per document.
+	 */
+	public synchronized Histogram getFeatureStructureCounts() {
+		return featureStructures.copy();
+	}
+
+	/**
+	 * Get the document text length per document.
+	 */
+	public synchronized Histogram getTextLengths() {
+		return textLength.copy();
+	}
+
+	/**
+	 * Get the number of documents processed by all components.
+	 */
+	public synchronized long getDocumentCount() {
+		return textLength.getCount();
+	}
+
+	/**
+	 * Get the number of documents processed per second, measured from the first event to the end
+	 * of the collection process or to now if it is not complete yet.
+	 */
+	public synchronized double getDocumentsPerSecond() {
+		if (start < 0) {
+			return 0;
+		}
+		long elapsed = (end >= 0 ? end : System.nanoTime()) - start;
+		return elapsed > 0 ? getDocumentCount() * 1e9 / elapsed : 0;
+	}
+
+	/**
+	 * Render the statistics as a table.
+	 */
+	public synchronized String getReport() {
+		Formatter f = new Formatter();
+		f.format("Documents: %d (%.1f docs/s)%n", getDocumentCount(), getDocumentsPerSecond());
+		f.format("Text length: mean %.0f, max %d%n", textLength.getMean(), textLength.getMax());
+		f.format("Feature structures: mean %.0f, max %d%n", featureStructures.getMean(),
+				featureStructures.getMax());
+		f.format("%-50s %8s %12s %10s %10s %10s %10s%n", "Component", "Count", "Total [ms]",
+				"Mean [ms]", "p50 [ms]", "p90 [ms]", "Max [ms]");
+		for (Map.Entry<String, Histogram> e : timings.entrySet()) {
+			Histogram h = e.getValue();
+			f.format("%-50s %8d %12.1f %10.3f %10.3f %10.3f %10.3f%n", e.getKey(), h.getCount(),
+					h.getTotal() / 1e6, h.getMean() / 1e6, h.getPercentile(0.5) / 1e6,
+					h.getPercentile(0.9) / 1e6, h.getMax() / 1e6);
+		}
+		return f.toString();
+	}
+
+	private void started(final long aNanos) {
+		if (start < 0) {
+			start = System.nanoTime() - aNanos;
+		}
+	}
+
+	private Histogram getOrCreate(final String aComponentName) {
+		Histogram h = timings.get(aComponentName);
+		if (h == null) {
+			h = new Histogram();
+			timings.put(aComponentName, h);
+		}
+		return h;
+	}
+
+	private static long countFeatureStructures(final CAS aCas) {
+		long count = 0;
+		Iterator<CAS> views = aCas.getViewIterator();
+		while (views.hasNext()) {
+			FSIterator<FeatureStructure> fsi = views.next().getIndexRepository()
+					.getAllIndexedFS(aCas.getTypeSystem().getTopType());
+			for (fsi.moveToFirst(); fsi.isValid(); fsi.moveToNext()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Distribution of non-negative values. Values are counted in buckets whose bounds are powers
+	 * of two, so percentiles are approximate: they are reported as the upper bound of the bucket
+	 * they fall into, but never more than the maximum.
+	 */
+	public static class Histogram {
+		private final long[] buckets = new long[64];
+
+		private long count;
+
+		private long total;
+
+		private long min = Long.MAX_VALUE;
+
+		private long max;
+
+		void add(final long aValue) {
+			long value = Math.max(0, aValue);
+			buckets[64 - Long.numberOfLeadingZeros(value)]++;
+			count++;
+			total += value;
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+
+		Histogram copy() {
+			Histogram h = new Histogram();
+			System.arraycopy(buckets, 0, h.buckets, 0, buckets.length);
+			h.count = count;
+			h.total = total;
+			h.min = min;
+			h.max = max;
+			return h;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getTotal() {
+			return total;
+		}
+
+		public long getMin() {
+			return count > 0 ? min : 0;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		public double getMean() {
+			return count > 0 ? (double) total / count : 0;
+		}
+
+		/**
+		 * Get the approximate value below which the given fraction of the values falls.
+		 *
+		 * @param aFraction
+		 *            a value between 0 and 1.
+		 */
+		public long getPercentile(final double aFraction) {
+			long rank = (long) Math.ceil(aFraction * count);
+			long seen = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				seen += buckets[i];
+				if (seen >= rank && seen > 0) {
+					// Bucket i holds values in [2^(i-1), 2^i - 1]
+					long upper = i == 0 ? 0 : (i == 63 ? Long.MAX_VALUE : (1L << i) - 1);
+					return Math.min(upper, max);
+				}
+			}
+			return max;
+		}
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ Copyright 2012
+ Ubiquitous Knowledge Processing (UKP) Lab
+ Technische Universitaet Darmstadt
+ All rights reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.uimafit.pipeline;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.uima.UIMAException;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.CASException;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.ResourceMetaData;
+
+/**
+ * Iteration over the documents of a collection using a pool of CASes. Unlike {@link JCasIterable},
+ * which reuses a single JCas, each element is a {@link Lease} on a JCas from the pool. The JCas
+ * remains valid until the lease is {@link Lease#release() released}, so several documents can be
+ * held at the same time without copying them. While the caller works on the current documents, the
+ * reader and the AnalysisEngines (each on its own thread) already process the upcoming documents
+ * using the CASes not currently leased.
+ * <p>
+ * Every lease must be released eventually. If the caller holds all CASes of the pool,
+ * {@link #next()} waits forever. If iteration is abandoned before the end of the collection,
+ * {@link #close()} should be called to stop the background threads.
+ *
+ * @author Richard Eckart de Castilho
+ */
+public class PooledJCasIterable implements Iterator<PooledJCasIterable.Lease>,
+		Iterable<PooledJCasIterable.Lease> {
+
+	private final PipelineStages stages;
+
+	private CAS next;
+
+	private boolean finished;
+
+	/**
+	 * Iterate over the documents loaded by the CollectionReader, running the AnalysisEngines on
+	 * each one before yielding them.
+	 *
+	 * @param aPoolSize
+	 *            The number of CASes in the pool. This is the maximum number of documents leased
+	 *            by the caller or being processed at any time. Must be at least {@code 1}.
+	 * @param aReader
+	 *            The CollectionReader for loading documents.
+	 * @param aEngines
+	 *            The AnalysisEngines for processing documents.
+	 */
+	public PooledJCasIterable(final int aPoolSize, final CollectionReader aReader,
+			final AnalysisEngine... aEngines) throws UIMAException, IOException {
+		if (aPoolSize < 1) {
+			throw new IllegalArgumentException("Pool size must be at least 1 but was [" + aPoolSize
+					+ "]");
+		}
+		final ResourceMetaData[] metaData = new ResourceMetaData[aEngines.length];
+		for (int i = 0; i < aEngines.length; i++) {
+			metaData[i] = aEngines[i].getMetaData();
+		}
+		this.stages = new PipelineStages(new PrefetchingReader(aReader, aPoolSize - 1, metaData),
+				aEngines);
+	}
+
+	public Iterator<Lease> iterator() {
+		return this;
+	}
+
+	public boolean hasNext() {
+		if (this.next != null) {
+			return true;
+		}
+		if (this.finished) {
+			return false;
+		}
+
+		try {
+			this.next = this.stages.take();
+		}
+		catch (UIMAException e) {
+			close();
+			throw new IllegalStateException(e);
+		}
+		catch (IOException e) {
+			close();
+			throw new IllegalStateException(e);
+		}
+
+		if (this.next == null) {
+			close();
+			return false;
+		}
+		return true;
+	}
+
+	public Lease next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		try {
+			Lease lease = new Lease(this.next.getJCas());
+			this.next = null;
+			return lease;
+		}
+		catch (CASException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Stop reading and processing further documents. JCases that are currently leased remain
+	 * valid.
+	 */
+	public void close() {
+		this.finished = true;
+		this.next = null;
+		this.stages.close();
+	}
+
+	/**
+	 * A JCas of the pool which is reserved for the caller until it is released.
+	 */
+	public final class Lease {
+		private JCas jCas;
+
+		private Lease(final JCas aJCas) {
+			this.jCas = aJCas;
+		}
+
+		/**
+		 * Get the leased JCas.
+		 *
+		 * @throws IllegalStateException
+		 *             if the lease has already been released.
+		 */
+		public JCas getJCas() {
+			if (this.jCas == null) {
+				throw new IllegalStateException("Lease has already been released");
+			}
+			return this.jCas;
+		}
+
+		/**
+		 * Return the JCas to the pool. The JCas is reset and must no longer be used. Releasing a
+		 * lease more than once has no effect.
+		 */
+		public void release() {
+			if (this.jCas != null) {
+				stages.release(this.jCas.getCas());
+				this.jCas = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,233 @@
+/*
+ Copyright 2012
+ Ubiquitous Knowledge Processing (UKP) Lab
+ Technische Universitaet Darmstadt
+ All rights reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.uimafit.pipeline;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.collection.CollectionException;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.metadata.ResourceMetaData;
+import org.apache.uima.util.CasCreationUtils;
+
+/**
+ * Runs a {@link CollectionReader} on a background thread which fills up to a given number of CASes
+ * in advance, so reading the next documents overlaps with processing the current one. CASes
+ * obtained via {@link #next()} must be handed back via {@link #release(CAS)}. If all CASes are in
+ * use, the background thread waits until one is released. Exceptions thrown by the reader are
+ * re-thrown to the consumer by {@link #hasNext()} once all documents read before the failure have
+ * been consumed.
+ * <p>
+ * The reader is only ever accessed from the background thread. It is neither closed nor destroyed
+ * by this class. {@link #close()} may be called from any thread; it returns once the background
+ * thread has stopped, so the reader can safely be closed afterwards.
+ *
+ * @author Richard Eckart de Castilho
+ */
+public class PrefetchingReader {
+	/**
+	 * Marks the end of the collection in the queue of filled CASes.
+	 */
+	private static final Object END = new Object();
+
+	private final CollectionReader reader;
+
+	private final BlockingQueue<CAS> free;
+
+	/**
+	 * Filled CASes, followed by either {@link #END} or the {@link Throwable} that stopped the
+	 * reader.
+	 */
+	private final BlockingQueue<Object> filled;
+
+	private final Thread thread;
+
+	// Written by the consumer and by close(), which may be called from another thread.
+	private volatile Object next;
+
+	private volatile boolean finished;
+
+	/**
+	 * Start reading in the background.
+	 *
+	 * @param aReader
+	 *            the reader.
+	 * @param aPrefetch
+	 *            the number of documents to read in advance. If this is {@code 0}, the next
+	 *            document is only read once the current one has been released.
+	 * @param aMetaData
+	 *            the meta data of the components processing the CASes. The meta data of the
+	 *            reader is added automatically.
+	 */
+	public PrefetchingReader(final CollectionReader aReader, final int aPrefetch,
+			final ResourceMetaData... aMetaData) throws ResourceInitializationException {
+		reader = aReader;
+
+		final List<ResourceMetaData> metaData = new ArrayList<ResourceMetaData>();
+		metaData.add(aReader.getMetaData());
+		for (ResourceMetaData md : aMetaData) {
+			metaData.add(md);
+		}
+
+		// The prefetched CASes plus the one currently held by the consumer. All CASes share the
+		// type system of the first one.
+		int size = Math.max(0, aPrefetch) + 1;
+		free = new LinkedBlockingQueue<CAS>();
+		CAS first = CasCreationUtils.createCas(metaData);
+		free.add(first);
+		for (int i = 1; i < size; i++) {
+			free.add(CasCreationUtils.createCas(metaData, first.getTypeSystem(), null));
+		}
+
+		// Bounded by the number of CASes plus the final marker
+		filled = new LinkedBlockingQueue<Object>();
+
+		thread = new Thread(new Runnable() {
+			public void run() {
+				read();
+			}
+		}, "PrefetchingReader-" + aReader.getMetaData().getName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void read() {
+		try {
+			while (reader.hasNext()) {
+				CAS cas = free.take();
+				try {
+					reader.getNext(cas);
+				}
+				catch (Throwable e) {
+					cas.reset();
+					free.add(cas);
+					throw e;
+				}
+				filled.add(cas);
+			}
+			filled.add(END);
+		}
+		catch (InterruptedException e) {
+			// Closed by the consumer
+			filled.add(END);
+		}
+		catch (Throwable e) {
+			filled.add(e);
+		}
+	}
+
+	/**
+	 * Check if there is another document. Waits until the next document has been read.
+	 *
+	 * @throws IOException
+	 *             if the reader failed with an I/O error.
+	 * @throws CollectionException
+	 *             if the reader failed for any other reason.
+	 */
+	public boolean hasNext() throws IOException, CollectionException {
+		if (next != null) {
+			return true;
+		}
+		if (finished) {
+			return false;
+		}
+
+		Object item;
+		try {
+			item = filled.take();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CollectionException(e);
+		}
+
+		if (item instanceof CAS) {
+			next = item;
+			return true;
+		}
+
+		finished = true;
+		if (item instanceof IOException) {
+			throw (IOException) item;
+		}
+		if (item instanceof CollectionException) {
+			throw (CollectionException) item;
+		}
+		if (item instanceof RuntimeException) {
+			throw (RuntimeException) item;
+		}
+		if (item instanceof Error) {
+			throw (Error) item;
+		}
+		if (item instanceof Throwable) {
+			throw new CollectionException((Throwable) item);
+		}
+		return false;
+	}
+
+	/**
+	 * Get the next document. The CAS must be {@link #release(CAS) released} when it is no longer
+	 * needed.
+	 *
+	 * @throws IOException
+	 *             if the reader failed with an I/O error.
+	 * @throws CollectionException
+	 *             if the reader failed for any other reason.
+	 */
+	public CAS next() throws IOException, CollectionException {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		CAS cas = (CAS) next;
+		next = null;
+		return cas;
+	}
+
+	/**
+	 * Reset a CAS obtained from {@link #next()} and make it available for reading further
+	 * documents.
+	 */
+	public void release(final CAS aCas) {
+		CAS cas = aCas.getView(CAS.NAME_DEFAULT_SOFA);
+		cas.reset();
+		free.add(cas);
+	}
+
+	/**
+	 * Stop reading and wait for the background thread to terminate. Documents that have already
+	 * been read are discarded.
+	 */
+	public void close() {
+		finished = true;
+		next = null;
+		thread.interrupt();
+		try {
+			thread.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
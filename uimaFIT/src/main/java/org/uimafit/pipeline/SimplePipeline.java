@@ -24,7 +24,13 @@ import static org.uimafit.factory.CollectionReaderFactory.createCollectionReader
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.uima.UIMAException;
 import org.apache.uima.analysis_engine.AnalysisEngine;
@@ -36,8 +42,10 @@ import org.apache.uima.collection.CollectionReaderDescription;
 import org.apache.uima.collection.base_cpm.BaseCollectionReader;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.resource.Resource;
+import org.apache.uima.resource.metadata.ProcessingResourceMetaData;
 import org.apache.uima.resource.metadata.ResourceMetaData;
 import org.apache.uima.util.CasCreationUtils;
+import org.apache.uima.util.CasPool;
 
 /**
  * @author Steven Bethard, Philip Ogren
@@ -118,6 +126,89 @@ public final class SimplePipeline {
 		}
 	}
 
+	/**
+	 * Run the CollectionReader and AnalysisEngines as a pipeline using multiple threads. The
+	 * engines are combined into an aggregate of which one replica per thread is created. The reader
+	 * runs on the calling thread and fills CASes from a pool which are then handed to the next
+	 * idle replica. Thus, at most two CASes per thread are in use at any time. If any of the
+	 * engines does not allow {@link org.uimafit.descriptor.OperationalProperties#multipleDeploymentAllowed()
+	 * multiple deployment}, only a single replica is created, but the reader still runs
+	 * concurrently with the analysis.
+	 * <p>
+	 * Documents are not necessarily processed in the order they are provided by the reader. After
+	 * processing all CASes provided by the reader, the method calls
+	 * {@link AnalysisEngine#collectionProcessComplete() collectionProcessComplete()} once on each
+	 * replica and {@link Resource#destroy() destroy()} on all replicas. If processing fails, no
+	 * further documents are read and the first exception is re-thrown.
+	 *
+	 * @param reader
+	 *            The CollectionReader that loads the documents into the CAS.
+	 * @param threads
+	 *            The number of replicas to run in parallel.
+	 * @param descs
+	 *            Primitive AnalysisEngineDescriptions that process the CAS, in order.
+	 */
+	public static void runPipelineParallel(final CollectionReader reader, final int threads,
+			final AnalysisEngineDescription... descs) throws UIMAException, IOException {
+		// Create AAE
+		final AnalysisEngineDescription aaeDesc = createAggregateDescription(descs);
+
+		// The AAE only allows multiple deployment if all of its delegates do
+		int replicas = 1;
+		if (aaeDesc.getAnalysisEngineMetaData().getOperationalProperties()
+				.isMultipleDeploymentAllowed()) {
+			replicas = Math.max(1, threads);
+		}
+
+		final AnalysisEngine[] engines = new AnalysisEngine[replicas];
+		try {
+			// Instantiate replicas
+			for (int i = 0; i < replicas; i++) {
+				engines[i] = createAggregate(aaeDesc);
+			}
+
+			// Process
+			runParallel(reader, engines);
+
+			// Signal end of processing
+			collectionProcessComplete(engines);
+		}
+		finally {
+			// Destroy
+			destroy(engines);
+		}
+	}
+
+	/**
+	 * Run the CollectionReader and AnalysisEngines as a pipeline using multiple threads. After
+	 * processing all CASes provided by the reader, the method calls
+	 * {@link CollectionReader#close() close()} on the reader and {@link Resource#destroy()
+	 * destroy()} on the reader.
+	 *
+	 * @param readerDesc
+	 *            The CollectionReader that loads the documents into the CAS.
+	 * @param threads
+	 *            The number of replicas to run in parallel.
+	 * @param descs
+	 *            Primitive AnalysisEngineDescriptions that process the CAS, in order.
+	 * @see #runPipelineParallel(CollectionReader, int, AnalysisEngineDescription...)
+	 */
+	public static void runPipelineParallel(final CollectionReaderDescription readerDesc,
+			final int threads, final AnalysisEngineDescription... descs) throws UIMAException,
+			IOException {
+		// Create the components
+		final CollectionReader reader = createCollectionReader(readerDesc);
+
+		try {
+			// Run the pipeline
+			runPipelineParallel(reader, threads, descs);
+		}
+		finally {
+			close(reader);
+			destroy(reader);
+		}
+	}
+
 	/**
 	 * Provides a simple way to run a pipeline for a given collection reader and sequence of
 	 * analysis engines. After processing all CASes provided by the reader, the method calls
@@ -147,6 +238,135 @@ public final class SimplePipeline {
 		collectionProcessComplete(engines);
 	}
 
+	/**
+	 * Run the CollectionReader and AnalysisEngines as a pipeline while reporting the time spent in
+	 * the reader and in each engine to the given listener. After processing all CASes provided by
+	 * the reader, the method calls {@link AnalysisEngine#collectionProcessComplete()
+	 * collectionProcessComplete()} on the engines and on the listener.
+	 *
+	 * @param reader
+	 *            a collection reader
+	 * @param listener
+	 *            the listener receiving the timings, e.g. a {@link PipelineStatistics}
+	 * @param engines
+	 *            a sequence of analysis engines. Engines are reported by their name. If several
+	 *            engines have the same name, their position in the sequence is appended.
+	 */
+	public static void runPipeline(final CollectionReader reader, final PipelineListener listener,
+			final AnalysisEngine... engines) throws UIMAException, IOException {
+		final List<ResourceMetaData> metaData = new ArrayList<ResourceMetaData>();
+		metaData.add(reader.getMetaData());
+		final String[] names = new String[engines.length];
+		for (int i = 0; i < engines.length; i++) {
+			metaData.add(engines[i].getMetaData());
+			names[i] = engines[i].getMetaData().getName();
+			if (asList(names).subList(0, i).contains(names[i])) {
+				names[i] += "-" + i;
+			}
+		}
+
+		final CAS cas = CasCreationUtils.createCas(metaData);
+		while (reader.hasNext()) {
+			long time = System.nanoTime();
+			reader.getNext(cas);
+			listener.documentRead(cas, System.nanoTime() - time);
+			for (int i = 0; i < engines.length; i++) {
+				time = System.nanoTime();
+				engines[i].process(cas);
+				listener.componentProcessed(names[i], System.nanoTime() - time);
+			}
+			listener.documentProcessed(cas);
+			cas.reset();
+		}
+
+		collectionProcessComplete(engines);
+		listener.collectionProcessComplete();
+	}
+
+	/**
+	 * Run the CollectionReader and AnalysisEngines as a pipeline, reading ahead the given number
+	 * of documents on a background thread while the engines process the current document. This
+	 * helps if the reader spends much time waiting for I/O. After processing all CASes provided by
+	 * the reader, the method calls {@link AnalysisEngine#collectionProcessComplete()
+	 * collectionProcessComplete()} on the engines.
+	 *
+	 * @param reader
+	 *            a collection reader
+	 * @param prefetch
+	 *            the number of documents to read ahead
+	 * @param engines
+	 *            a sequence of analysis engines
+	 * @see PrefetchingReader
+	 */
+	public static void runPipelinePrefetching(final CollectionReader reader, final int prefetch,
+			final AnalysisEngine... engines) throws UIMAException, IOException {
+		final ResourceMetaData[] metaData = new ResourceMetaData[engines.length];
+		for (int i = 0; i < engines.length; i++) {
+			metaData[i] = engines[i].getMetaData();
+		}
+
+		final PrefetchingReader prefetcher = new PrefetchingReader(reader, prefetch, metaData);
+		try {
+			while (prefetcher.hasNext()) {
+				final CAS cas = prefetcher.next();
+				try {
+					runPipeline(cas, engines);
+				}
+				finally {
+					prefetcher.release(cas);
+				}
+			}
+		}
+		finally {
+			prefetcher.close();
+		}
+
+		collectionProcessComplete(engines);
+	}
+
+	/**
+	 * Run the CollectionReader and AnalysisEngines as a pipeline in which the reader and each of
+	 * the engines run on their own thread. The CASes are handed from one stage to the next in the
+	 * order provided by the reader, so each engine still sees the documents in order and is only
+	 * ever called from one thread. The throughput of the pipeline is limited by the slowest stage
+	 * instead of the sum of all stages. After processing all CASes provided by the reader, the
+	 * method calls {@link AnalysisEngine#collectionProcessComplete() collectionProcessComplete()}
+	 * on the engines.
+	 *
+	 * @param reader
+	 *            a collection reader
+	 * @param capacity
+	 *            the number of CASes used by the pipeline, which is the maximum number of
+	 *            documents read but not yet fully processed at any time. If this is less than the
+	 *            number of engines plus one, the number of engines plus one is used, so that the
+	 *            reader and every stage can be busy at the same time.
+	 * @param engines
+	 *            a sequence of analysis engines
+	 */
+	public static void runPipelineStaged(final CollectionReader reader, final int capacity,
+			final AnalysisEngine... engines) throws UIMAException, IOException {
+		final ResourceMetaData[] metaData = new ResourceMetaData[engines.length];
+		for (int i = 0; i < engines.length; i++) {
+			metaData[i] = engines[i].getMetaData();
+		}
+
+		// The reader keeps one CAS in addition to the prefetched ones
+		final PrefetchingReader prefetcher = new PrefetchingReader(reader, Math.max(capacity,
+				engines.length + 1) - 1, metaData);
+		final PipelineStages stages = new PipelineStages(prefetcher, engines);
+		try {
+			CAS cas;
+			while ((cas = stages.take()) != null) {
+				stages.release(cas);
+			}
+		}
+		finally {
+			stages.close();
+		}
+
+		collectionProcessComplete(engines);
+	}
+
 	/**
 	 * Run a sequence of {@link AnalysisEngine analysis engines} over a {@link JCas}. The result of
 	 * the analysis can be read from the JCas.
@@ -224,6 +444,107 @@ public final class SimplePipeline {
 		}
 	}
 
+	/**
+	 * Read all documents on the calling thread and process each with the next idle engine on a
+	 * thread pool with one thread per engine.
+	 */
+	private static void runParallel(final CollectionReader reader, final AnalysisEngine[] engines)
+			throws UIMAException, IOException {
+		final int replicas = engines.length;
+
+		// One CAS per engine being processed plus one per engine waiting to be processed
+		final CasPool pool = new CasPool(2 * replicas,
+				Arrays.<ProcessingResourceMetaData> asList(reader.getProcessingResourceMetaData(),
+						engines[0].getAnalysisEngineMetaData()), null, null);
+
+		// There are never more threads busy than engines, so an idle engine is always available
+		final BlockingQueue<AnalysisEngine> idle = new ArrayBlockingQueue<AnalysisEngine>(
+				replicas, false, asList(engines));
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(replicas, replicas, 0,
+				TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(pool.getSize()));
+
+		try {
+			while (failure.get() == null && reader.hasNext()) {
+				// Blocks until a replica has finished with a CAS
+				final CAS cas = pool.getCas(0);
+				boolean submitted = false;
+				try {
+					reader.getNext(cas);
+					executor.execute(new Runnable() {
+						public void run() {
+							try {
+								AnalysisEngine engine = idle.take();
+								try {
+									if (failure.get() == null) {
+										engine.process(cas);
+									}
+								}
+								finally {
+									idle.add(engine);
+								}
+							}
+							catch (Throwable e) {
+								failure.compareAndSet(null, e);
+							}
+							finally {
+								pool.releaseCas(cas);
+							}
+						}
+					});
+					submitted = true;
+				}
+				finally {
+					if (!submitted) {
+						pool.releaseCas(cas);
+					}
+				}
+			}
+		}
+		finally {
+			executor.shutdown();
+			awaitTermination(executor);
+		}
+
+		rethrow(failure.get());
+	}
+
+	private static void awaitTermination(final ThreadPoolExecutor executor) {
+		try {
+			while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+				// Keep waiting
+			}
+		}
+		catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the pipeline to finish",
+					e);
+		}
+	}
+
+	/**
+	 * Re-throw an exception caught on a worker thread on the calling thread.
+	 */
+	static void rethrow(final Throwable e) throws UIMAException, IOException {
+		if (e == null) {
+			return;
+		}
+		if (e instanceof UIMAException) {
+			throw (UIMAException) e;
+		}
+		if (e instanceof IOException) {
+			throw (IOException) e;
+		}
+		if (e instanceof RuntimeException) {
+			throw (RuntimeException) e;
+		}
+		if (e instanceof Error) {
+			throw (Error) e;
+		}
+		throw new AnalysisEngineProcessException(e);
+	}
+
 	/**
 	 * Notify a set of {@link AnalysisEngine analysis engines} that the collection process is complete.
 	 */
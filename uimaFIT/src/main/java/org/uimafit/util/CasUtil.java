@@ -20,15 +20,11 @@
  */
 package org.uimafit.util;
 
-import static java.util.Collections.EMPTY_LIST;
-import static java.util.Collections.emptyList;
 import static java.util.Collections.unmodifiableList;
-import static java.util.Collections.unmodifiableMap;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -40,7 +36,6 @@ import org.apache.uima.cas.CASRuntimeException;
 import org.apache.uima.cas.FSIterator;
 import org.apache.uima.cas.FeatureStructure;
 import org.apache.uima.cas.Type;
-import org.apache.uima.cas.TypeSystem;
 import org.apache.uima.cas.impl.Subiterator;
 import org.apache.uima.cas.text.AnnotationFS;
 import org.apache.uima.cas.text.AnnotationIndex;
@@ -502,15 +497,11 @@ public class CasUtil {
 	}
 
 	/**
-	 * Get a list of annotations of the given annotation type constraint by a certain annotation.
-	 * Iterates over all annotations of the given type to find the covered annotations. Does not use
-	 * subiterators and does not respect type prioritites. Was adapted from {@link Subiterator}.
-	 * Uses the same approach except that type priorities are ignored.
-	 * <p>
-	 * <b>Note:</b> this is significantly slower than using
-	 * {@link #selectCovered(CAS, Type, AnnotationFS)}. It is possible to use {@code 
-	 * selectCovered(cas, type, new Annotation(jCas, int, int))}, but that will allocate memory
-	 * in the jCas for the new annotation. If you do that repeatedly many times, memory may fill up. 
+	 * Get a list of annotations of the given annotation type constraint by the given offsets.
+	 * Does not respect type prioritites. Uses an {@link OffsetSnapshot} of the given type to
+	 * seek directly to the first annotation starting at the begin offset. The snapshot is built on
+	 * the first call and re-used until annotations of the given type are added to or removed from
+	 * the CAS. No new feature structures are created in the CAS.
 	 *
 	 * @param cas
 	 *            a CAS.
@@ -524,51 +515,25 @@ public class CasUtil {
 	 * @see Subiterator
 	 */
 	public static List<AnnotationFS> selectCovered(CAS cas, Type type, int begin, int end) {
-
 		List<AnnotationFS> list = new ArrayList<AnnotationFS>();
-		FSIterator<AnnotationFS> it = cas.getAnnotationIndex(type).iterator();
-
-		// Skip annotations whose start is before the start parameter.
-		while (it.isValid() && (it.get()).getBegin() < begin) {
-			it.moveToNext();
-		}
-
-		boolean strict = true;
-		while (it.isValid()) {
-			AnnotationFS a = it.get();
-			// If the start of the current annotation is past the end parameter, we're done.
-			if (a.getBegin() > end) {
-				break;
-			}
-			it.moveToNext();
-			if (strict && a.getEnd() > end) {
-				continue;
-			}
-
-			assert (a.getBegin() >= begin) : "Illegal begin " + a.getBegin() + " in [" + begin
-					+ ".." + end + "]";
-
-			assert (a.getEnd() <= end) : "Illegal end " + a.getEnd() + " in [" + begin + ".."
-					+ end + "]";
-
-			list.add(a);
-		}
-
+		OffsetSnapshot.get(cas, type).selectCovered(begin, end, list);
 		return list;
 	}
 
 	/**
 	 * Get a list of annotations of the given annotation type constraint by a certain annotation.
-	 * Iterates over all annotations to find the covering annotations.
+	 * Uses an {@link OffsetSnapshot} of the given type to find the covering annotations. The
+	 * snapshot is built on the first call and re-used until annotations of the given type are
+	 * added to or removed from the CAS, so subsequent lookups take logarithmic time.
 	 *
 	 * <p>
-	 * <b>Note:</b> this is <b>REALLY SLOW!</b> You don't want to use this. Instead, consider
-	 * using {@link #indexCovering(CAS, Type, Type)} or a {@link ContainmentIndex}.
+	 * <b>Note:</b> if you need to look up the covering annotations for all annotations of a type,
+	 * consider using {@link #indexCovering(CAS, Type, Type)} or a {@link ContainmentIndex}.
 	 *
 	 * @param cas
 	 *            a CAS.
 	 * @param type
-	 *            a UIMA type.
+	 *            a UIMA type. If {@code null}, annotations of any type are returned.
 	 * @param begin
 	 *            begin offset.
 	 * @param end
@@ -576,17 +541,9 @@ public class CasUtil {
 	 * @return a return value.
 	 */
 	public static List<AnnotationFS> selectCovering(CAS cas, Type type, int begin, int end) {
-
-		TypeSystem ts = cas.getTypeSystem();
+		Type t = (type == null) ? cas.getAnnotationType() : type;
 		List<AnnotationFS> list = new ArrayList<AnnotationFS>();
-		FSIterator<AnnotationFS> iter = cas.getAnnotationIndex().iterator();
-		while (iter.hasNext()) {
-			AnnotationFS a = iter.next();
-			if ((a.getBegin() <= begin) && (a.getEnd() >= end)
-					&& ((type == null) || (ts.subsumes(type, a.getType())))) {
-				list.add(a);
-			}
-		}
+		OffsetSnapshot.get(cas, t).selectCovering(begin, end, list);
 		return list;
 	}
 
@@ -595,6 +552,11 @@ public class CasUtil {
 	 * is preferable to using {@link #selectCovering(CAS, Type, int, int)} because the overhead of
 	 * scanning the CAS occurs only when the index is build. Subsequent lookups to the index are
 	 * fast.
+	 * <p>
+	 * The index is built in a single sweep over both annotation types. The returned map is
+	 * read-only. Looking up an annotation that is not covered by any annotation returns an empty
+	 * collection. Lookups are done by feature structure address and do not depend on the
+	 * {@code hashCode()} or {@code equals()} implementations of the annotations.
 	 *
 	 * @param cas
 	 *            a CAS.
@@ -606,31 +568,8 @@ public class CasUtil {
 	 */
 	public static Map<AnnotationFS, Collection<AnnotationFS>> indexCovering(CAS cas, Type type,
 			Type coveringType) {
-		Map<AnnotationFS, Collection<AnnotationFS>> index = new HashMap<AnnotationFS, Collection<AnnotationFS>>() {
-			private static final long serialVersionUID = 1L;
-
-			@Override
-			public Collection<AnnotationFS> get(Object paramObject) {
-				Collection<AnnotationFS> res = super.get(paramObject);
-				if (res == null) {
-					return emptyList();
-				}
-				else {
-					return res;
-				}
-			}
-		};
-		for (AnnotationFS s : select(cas, coveringType)) {
-			for (AnnotationFS u : selectCovered(cas, type, s)) {
-				Collection<AnnotationFS> c = index.get(u);
-				if (c == EMPTY_LIST) {
-					c = new LinkedList<AnnotationFS>();
-					index.put(u, c);
-				}
-				c.add(s);
-			}
-		}
-		return unmodifiableMap(index);
+		return new CoverageIndex(OffsetSnapshot.get(cas, coveringType),
+				OffsetSnapshot.get(cas, type)).getCoveringMap();
 	}
 
 	/**
@@ -638,6 +577,11 @@ public class CasUtil {
 	 * is preferable to using {@link #selectCovered(CAS, Type, int, int)} because the overhead of
 	 * scanning the CAS occurs only when the index is build. Subsequent lookups to the index are
 	 * fast.
+	 * <p>
+	 * The index is built in a single sweep over both annotation types. The returned map is
+	 * read-only. Looking up an annotation that does not cover any annotation returns an empty
+	 * collection. Lookups are done by feature structure address and do not depend on the
+	 * {@code hashCode()} or {@code equals()} implementations of the annotations.
 	 *
 	 * @param cas
 	 *            a CAS.
@@ -649,32 +593,10 @@ public class CasUtil {
 	 */
 	public static Map<AnnotationFS, Collection<AnnotationFS>> indexCovered(CAS cas, Type type,
 			Type coveredType) {
-		Map<AnnotationFS, Collection<AnnotationFS>> index = new HashMap<AnnotationFS, Collection<AnnotationFS>>() {
-			private static final long serialVersionUID = 1L;
-
-			@Override
-			public Collection<AnnotationFS> get(Object paramObject) {
-				Collection<AnnotationFS> res = super.get(paramObject);
-				if (res == null) {
-					return emptyList();
-				}
-				else {
-					return res;
-				}
-			}
-		};
-		for (AnnotationFS s : select(cas, type)) {
-			for (AnnotationFS u : selectCovered(cas, coveredType, s)) {
-				Collection<AnnotationFS> c = index.get(s);
-				if (c == EMPTY_LIST) {
-					c = new LinkedList<AnnotationFS>();
-					index.put(s, c);
-				}
-				c.add(u);
-			}
-		}
-		return unmodifiableMap(index);
+		return new CoverageIndex(OffsetSnapshot.get(cas, type),
+				OffsetSnapshot.get(cas, coveredType)).getCoveredMap();
 	}
+
 	/**
 	 * This method exists simply as a convenience method for unit testing. It is not very efficient
 	 * and should not, in general be used outside the context of unit testing.
@@ -19,14 +19,8 @@
 
 package org.uimafit.util;
 
-import static org.uimafit.util.CasUtil.select;
-import static org.uimafit.util.CasUtil.selectCovered;
-
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
-import java.util.Map;
 
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.text.AnnotationFS;
@@ -35,6 +29,11 @@ import org.apache.uima.jcas.JCas;
 /**
  * Create a fast way of repeatedly checking whether instances of one type are contained within the
  * boundaries on another type.
+ * <p>
+ * The index is built in a single sweep over the annotations of both types. It stores the
+ * containment relation as an offset array and a flat array of annotation positions. Both lookup
+ * directions share the same storage: the reverse direction is derived from it when the index is
+ * created with {@link Type#REVERSE} or {@link Type#BOTH}.
  *
  * @author Richard Eckart de Castilho
  *
@@ -48,10 +47,8 @@ public class ContainmentIndex<S extends AnnotationFS, U extends AnnotationFS> {
 		DIRECT, REVERSE, BOTH
 	}
 
-	private Map<AnnotationFS, Collection<AnnotationFS>> data =
-		new LinkedHashMap<AnnotationFS, Collection<AnnotationFS>>();
-	private Map<AnnotationFS, Collection<AnnotationFS>> dataRev =
-		new LinkedHashMap<AnnotationFS, Collection<AnnotationFS>>();
+	private final CoverageIndex index;
+	private final Type type;
 
 	/**
 	 * Create a new index on the given JCas using the specified two types. The last argument
@@ -68,34 +65,11 @@ public class ContainmentIndex<S extends AnnotationFS, U extends AnnotationFS> {
 	 */
 	public ContainmentIndex(CAS cas, org.apache.uima.cas.Type aSuper, org.apache.uima.cas.Type aUnder,
 			Type aType) {
-		Collection<AnnotationFS> over = select(cas, aSuper);
-		for (AnnotationFS s : over) {
-			Collection<AnnotationFS> under = selectCovered(cas, aUnder, s);
-			for (AnnotationFS u : under) {
-				switch (aType) {
-				case DIRECT: {
-					put(data, s, u);
-					break;
-				}
-				case REVERSE:
-					put(dataRev, u, s);
-					break;
-				case BOTH:
-					put(data, s, u);
-					put(dataRev, u, s);
-					break;
-				}
-			}
-		}
-	}
-
-	private <X, Y> void put(Map<X, Collection<Y>> map, X key, Y value) {
-		Collection<Y> c = map.get(key);
-		if (c == null) {
-			c = new LinkedList<Y>();
-			map.put(key, c);
+		index = new CoverageIndex(OffsetSnapshot.get(cas, aSuper), OffsetSnapshot.get(cas, aUnder));
+		type = aType;
+		if (type != Type.DIRECT) {
+			index.buildReverse();
 		}
-		c.add(value);
 	}
 
 	/**
@@ -106,14 +80,13 @@ public class ContainmentIndex<S extends AnnotationFS, U extends AnnotationFS> {
 	 *            a covering type instance.
 	 * @return a collection of covered type instances.
 	 */
-	@SuppressWarnings("unchecked")
+	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public Collection<U> containedIn(S aSuper) {
-		@SuppressWarnings("rawtypes")
-		Collection c = data.get(aSuper);
-		if (c == null) {
-			return Collections.emptySet();
+		int s = (type != Type.REVERSE) ? index.getOuter().indexOf(aSuper) : -1;
+		if (s < 0) {
+			return Collections.emptyList();
 		}
-		return c;
+		return (Collection) index.getCovered(s);
 	}
 
 	/**
@@ -124,14 +97,13 @@ public class ContainmentIndex<S extends AnnotationFS, U extends AnnotationFS> {
 	 *            a covered type instance.
 	 * @return a collection of covering type instances.
 	 */
-	@SuppressWarnings("unchecked")
+	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public Collection<S> containing(U aUnder) {
-		@SuppressWarnings("rawtypes")
-		Collection c = dataRev.get(aUnder);
-		if (c == null) {
-			return Collections.emptySet();
+		int u = (type != Type.DIRECT) ? index.getInner().indexOf(aUnder) : -1;
+		if (u < 0) {
+			return Collections.emptyList();
 		}
-		return c;
+		return (Collection) index.getCovering(u);
 	}
 
 	/**
@@ -144,7 +116,12 @@ public class ContainmentIndex<S extends AnnotationFS, U extends AnnotationFS> {
 	 * @return whether the covered instance is contained in the covering instance.
 	 */
 	public boolean isContainedIn(S aSuper, U aUnder) {
-		return containedIn(aSuper).contains(aUnder);
+		if (type == Type.REVERSE) {
+			return false;
+		}
+		int s = index.getOuter().indexOf(aSuper);
+		int u = index.getInner().indexOf(aUnder);
+		return s >= 0 && u >= 0 && index.isCovered(s, u);
 	}
 
 	/**
@@ -155,8 +132,11 @@ public class ContainmentIndex<S extends AnnotationFS, U extends AnnotationFS> {
 	 * @return whether the covered instance is contained in any instance of the covering type.
 	 */
 	public boolean isContainedInAny(U aUnder) {
-		Collection<S> containers = containing(aUnder);
-		return containers != null && !containers.isEmpty();
+		if (type == Type.DIRECT) {
+			return false;
+		}
+		int u = index.getInner().indexOf(aUnder);
+		return u >= 0 && index.isCoveredByAny(u);
 	}
 
 	/**
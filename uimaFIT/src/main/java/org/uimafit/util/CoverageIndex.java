@@ -0,0 +1,355 @@
+/*
+ Copyright 2012
+ Ubiquitous Knowledge Processing (UKP) Lab
+ Technische Universitaet Darmstadt
+ All rights reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.uimafit.util;
+
+import static java.util.Collections.emptyList;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import org.apache.uima.cas.text.AnnotationFS;
+
+/**
+ * Covered-by relation between the annotations of two types. The relation is built from the
+ * {@link OffsetSnapshot snapshots} of both types and is stored in compressed sparse row form: for
+ * each covering annotation, a slice of a flat array holds the positions of the covered
+ * annotations. The reverse relation is derived from the same data when needed.
+ * <p>
+ * Both snapshots are sorted by begin offset, so the first candidate for each covering annotation
+ * is found by advancing a single cursor over the covered annotations. From there, all annotations
+ * beginning within the covering annotation are scanned. Covering annotations which are nested or
+ * overlap each other scan the same covered annotations again, so building the relation takes
+ * O(n + m + s) time, where s is the total number of covered annotations beginning within each
+ * covering annotation. This is the size of the relation plus the annotations that begin inside but
+ * end outside a covering annotation.
+ * <p>
+ * The annotations of both snapshots are resolved once when the relation is built. Lists and maps
+ * obtained from the index hold on to these annotations, so they stay valid after the CAS has been
+ * reset or re-used.
+ *
+ * @author Richard Eckart de Castilho
+ */
+class CoverageIndex {
+	private final OffsetSnapshot<AnnotationFS> outer;
+	private final OffsetSnapshot<AnnotationFS> inner;
+
+	// Positions of the annotations of the inner snapshot covered by outer annotation i are
+	// stored in targets[offsets[i]] to targets[offsets[i + 1] - 1].
+	private final int[] offsets;
+	private final int[] targets;
+
+	// Reverse relation, built on demand.
+	private int[] revOffsets;
+	private int[] revTargets;
+
+	// Annotations of both snapshots in snapshot order.
+	private final AnnotationFS[] outerFs;
+	private final AnnotationFS[] innerFs;
+
+	/**
+	 * Build the relation.
+	 *
+	 * @param aOuter
+	 *            snapshot of the covering annotations.
+	 * @param aInner
+	 *            snapshot of the covered annotations.
+	 */
+	CoverageIndex(OffsetSnapshot<AnnotationFS> aOuter, OffsetSnapshot<AnnotationFS> aInner) {
+		outer = aOuter;
+		inner = aInner;
+
+		int outerSize = outer.size();
+		int innerSize = inner.size();
+		offsets = new int[outerSize + 1];
+		int[] buffer = new int[Math.max(16, innerSize)];
+		int count = 0;
+
+		// Both snapshots are sorted by begin offset, so the first inner annotation that may be
+		// covered by the current outer annotation only ever moves forward. The candidates after it
+		// are scanned again for every outer annotation overlapping them.
+		int start = 0;
+		for (int o = 0; o < outerSize; o++) {
+			int begin = outer.getBegin(o);
+			int end = outer.getEnd(o);
+			int ref = outer.getAddress(o);
+			while (start < innerSize && inner.getBegin(start) < begin) {
+				start++;
+			}
+			for (int i = start; i < innerSize && inner.getBegin(i) <= end; i++) {
+				if (inner.getEnd(i) <= end && inner.getAddress(i) != ref) {
+					if (count == buffer.length) {
+						buffer = Arrays.copyOf(buffer, buffer.length * 2);
+					}
+					buffer[count++] = i;
+				}
+			}
+			offsets[o + 1] = count;
+		}
+		targets = Arrays.copyOf(buffer, count);
+
+		outerFs = materialize(outer);
+		innerFs = (inner == outer) ? outerFs : materialize(inner);
+	}
+
+	/**
+	 * Get the covering annotations.
+	 */
+	OffsetSnapshot<AnnotationFS> getOuter() {
+		return outer;
+	}
+
+	/**
+	 * Get the covered annotations.
+	 */
+	OffsetSnapshot<AnnotationFS> getInner() {
+		return inner;
+	}
+
+	/**
+	 * Get the annotations covered by the outer annotation at the given snapshot position.
+	 */
+	List<AnnotationFS> getCovered(int aOuter) {
+		return new Slice(innerFs, targets, offsets[aOuter], offsets[aOuter + 1]);
+	}
+
+	/**
+	 * Get the annotations covering the inner annotation at the given snapshot position.
+	 */
+	List<AnnotationFS> getCovering(int aInner) {
+		buildReverse();
+		return new Slice(outerFs, revTargets, revOffsets[aInner],
+				revOffsets[aInner + 1]);
+	}
+
+	/**
+	 * Check if the inner annotation at the given snapshot position is covered by the outer
+	 * annotation at the given snapshot position. The positions of the covered annotations are
+	 * sorted, so this is a binary search.
+	 */
+	boolean isCovered(int aOuter, int aInner) {
+		return Arrays.binarySearch(targets, offsets[aOuter], offsets[aOuter + 1], aInner) >= 0;
+	}
+
+	/**
+	 * Check if the inner annotation at the given snapshot position is covered by any outer
+	 * annotation.
+	 */
+	boolean isCoveredByAny(int aInner) {
+		buildReverse();
+		return revOffsets[aInner] != revOffsets[aInner + 1];
+	}
+
+	/**
+	 * Get a map from each covering annotation to the annotations it covers.
+	 */
+	Map<AnnotationFS, Collection<AnnotationFS>> getCoveredMap() {
+		return new CoverageMap(false);
+	}
+
+	/**
+	 * Get a map from each covered annotation to the annotations covering it.
+	 */
+	Map<AnnotationFS, Collection<AnnotationFS>> getCoveringMap() {
+		buildReverse();
+		return new CoverageMap(true);
+	}
+
+	private static AnnotationFS[] materialize(OffsetSnapshot<AnnotationFS> aSnapshot) {
+		AnnotationFS[] fs = new AnnotationFS[aSnapshot.size()];
+		for (int i = 0; i < fs.length; i++) {
+			fs[i] = aSnapshot.get(i);
+		}
+		return fs;
+	}
+
+	/**
+	 * Transpose the relation using a counting sort. Since the outer annotations are visited in
+	 * order, the covering annotations of each covered annotation end up in index order.
+	 */
+	synchronized void buildReverse() {
+		if (revOffsets != null) {
+			return;
+		}
+		int[] ro = new int[inner.size() + 1];
+		for (int t : targets) {
+			ro[t + 1]++;
+		}
+		for (int i = 0; i < inner.size(); i++) {
+			ro[i + 1] += ro[i];
+		}
+		int[] rt = new int[targets.length];
+		int[] fill = Arrays.copyOf(ro, inner.size());
+		for (int o = 0; o < outer.size(); o++) {
+			for (int e = offsets[o]; e < offsets[o + 1]; e++) {
+				rt[fill[targets[e]]++] = o;
+			}
+		}
+		revTargets = rt;
+		revOffsets = ro;
+	}
+
+	/**
+	 * Read-only list of the annotations at the positions stored in a slice of a position array.
+	 */
+	private static class Slice extends AbstractList<AnnotationFS> implements RandomAccess {
+		private final AnnotationFS[] annotations;
+		private final int[] positions;
+		private final int from;
+		private final int to;
+
+		Slice(AnnotationFS[] aAnnotations, int[] aPositions, int aFrom, int aTo) {
+			annotations = aAnnotations;
+			positions = aPositions;
+			from = aFrom;
+			to = aTo;
+		}
+
+		@Override
+		public AnnotationFS get(int aIndex) {
+			if (aIndex < 0 || aIndex >= to - from) {
+				throw new IndexOutOfBoundsException("Index: " + aIndex + ", Size: " + size());
+			}
+			return annotations[positions[from + aIndex]];
+		}
+
+		@Override
+		public int size() {
+			return to - from;
+		}
+	}
+
+	/**
+	 * Read-only map over the relation or the reverse relation. Keys are looked up by their feature
+	 * structure address using binary search over the key snapshot, so
+	 * {@link AnnotationFS#hashCode()} is never called. The annotation found at that address must
+	 * be the very same object the index was built from, otherwise the key is not part of the map.
+	 * Looking up a key which is not part of the relation yields an empty list instead of
+	 * {@code null}.
+	 */
+	private class CoverageMap extends AbstractMap<AnnotationFS, Collection<AnnotationFS>> {
+		private final boolean reverse;
+		private final OffsetSnapshot<AnnotationFS> keys;
+		private final AnnotationFS[] keyFs;
+		private final int[] keyOffsets;
+		private final int size;
+		private Set<Map.Entry<AnnotationFS, Collection<AnnotationFS>>> entrySet;
+
+		CoverageMap(boolean aReverse) {
+			reverse = aReverse;
+			keys = reverse ? inner : outer;
+			keyFs = reverse ? innerFs : outerFs;
+			keyOffsets = reverse ? revOffsets : offsets;
+
+			int n = 0;
+			for (int k = 0; k < keys.size(); k++) {
+				if (keyOffsets[k] != keyOffsets[k + 1]) {
+					n++;
+				}
+			}
+			size = n;
+		}
+
+		private List<AnnotationFS> valueAt(int aKey) {
+			return reverse ? getCovering(aKey) : getCovered(aKey);
+		}
+
+		@Override
+		public Collection<AnnotationFS> get(Object aKey) {
+			if (aKey instanceof AnnotationFS) {
+				int k = keys.indexOf((AnnotationFS) aKey);
+				if (k >= 0 && keyFs[k] == aKey && keyOffsets[k] != keyOffsets[k + 1]) {
+					return valueAt(k);
+				}
+			}
+			List<AnnotationFS> empty = emptyList();
+			return empty;
+		}
+
+		@Override
+		public boolean containsKey(Object aKey) {
+			return !get(aKey).isEmpty();
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public Set<Map.Entry<AnnotationFS, Collection<AnnotationFS>>> entrySet() {
+			if (entrySet == null) {
+				entrySet = new AbstractSet<Map.Entry<AnnotationFS, Collection<AnnotationFS>>>() {
+					@Override
+					public Iterator<Map.Entry<AnnotationFS, Collection<AnnotationFS>>> iterator() {
+						return new EntryIterator();
+					}
+
+					@Override
+					public int size() {
+						return size;
+					}
+				};
+			}
+			return entrySet;
+		}
+
+		/**
+		 * Iterates over the keys that have a non-empty value in index order.
+		 */
+		private class EntryIterator implements Iterator<Map.Entry<AnnotationFS, Collection<AnnotationFS>>> {
+			private int next = advance(0);
+
+			private int advance(int aFrom) {
+				int k = aFrom;
+				while (k < keys.size() && keyOffsets[k] == keyOffsets[k + 1]) {
+					k++;
+				}
+				return k;
+			}
+
+			public boolean hasNext() {
+				return next < keys.size();
+			}
+
+			public Map.Entry<AnnotationFS, Collection<AnnotationFS>> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				int k = next;
+				next = advance(k + 1);
+				Collection<AnnotationFS> value = valueAt(k);
+				return new SimpleImmutableEntry<AnnotationFS, Collection<AnnotationFS>>(
+						keyFs[k], value);
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		}
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ Copyright 2012
+ Ubiquitous Knowledge Processing (UKP) Lab
+ Technische Universitaet Darmstadt
+ All rights reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.uimafit.util;
+
+import java.io.File;
+
+import org.uimafit.factory.DescriptorIndex;
+
+/**
+ * Generates a {@link DescriptorIndex} at build time, so the type and index descriptors listed in
+ * the {@code META-INF/org.uimafit/types.txt} and {@code META-INF/org.uimafit/fsindexes.txt} files
+ * do not need to be searched on the class path at runtime. The main method takes the output
+ * directory as its single argument. The index covers the class path the program runs on, so it
+ * should be generated by the module assembling the application and not by library modules.
+ * Example section for a pom.xml:
+ *
+ * <pre>
+ * &lt;plugin>
+ *   &lt;groupId>org.codehaus.mojo&lt;/groupId>
+ *   &lt;artifactId>exec-maven-plugin&lt;/artifactId>
+ *   &lt;executions>
+ *     &lt;execution>
+ *       &lt;id>descriptor-index&lt;/id>
+ *       &lt;phase>process-classes&lt;/phase>
+ *       &lt;goals>
+ *         &lt;goal>java&lt;/goal>
+ *       &lt;/goals>
+ *       &lt;configuration>
+ *         &lt;classpathScope>runtime&lt;/classpathScope>
+ *         &lt;mainClass>org.uimafit.util.DescriptorIndexPomFriendly&lt;/mainClass>
+ *         &lt;arguments>
+ *           &lt;argument>${project.build.outputDirectory}&lt;/argument>
+ *         &lt;/arguments>
+ *       &lt;/configuration>
+ *     &lt;/execution>
+ *   &lt;/executions>
+ * &lt;/plugin>
+ * </pre>
+ *
+ * @author Richard Eckart de Castilho
+ */
+public class DescriptorIndexPomFriendly {
+	/**
+	 * See class-level javadoc for instructions on running this program.
+	 */
+	public static void main(String[] args) throws Exception {
+		DescriptorIndex.write(new File(args[0]));
+	}
+}
@@ -348,14 +348,10 @@ public class JCasUtil {
 	}
 
 	/**
-	 * Get a list of annotations of the given annotation type constrained by a 'covering'
-	 * annotation. Iterates over all annotations of the given type to find the covered annotations.
-	 * Does not use subiterators.
-	 * <p>
-	 * <b>Note:</b> this is significantly slower than using
-	 * {@link #selectCovered(JCas, Class, AnnotationFS)}. It is possible to use {@code 
-	 * selectCovered(jCas, cls, new Annotation(jCas, int, int))}, but that will allocate memory
-	 * in the jCas for the new annotation. If you do that repeatedly many times, memory may fill up. 
+	 * Get a list of annotations of the given annotation type constrained by the given offsets.
+	 * Does not use subiterators. Uses an {@link OffsetSnapshot} to seek directly to the first
+	 * annotation starting at the begin offset, so no new annotation needs to be created in the
+	 * JCas.
 	 *
 	 * @param <T>
 	 *            the JCas type.
@@ -376,11 +372,11 @@ public class JCasUtil {
 
 	/**
 	 * Get a list of annotations of the given annotation type constraint by a certain annotation.
-	 * Iterates over all annotations to find the covering annotations.
+	 * Uses an {@link OffsetSnapshot} of the given type to find the covering annotations.
 	 *
 	 * <p>
-	 * <b>Note:</b> this is <b>REALLY SLOW!</b> You don't want to use this. Instead, consider
-	 * using {@link #indexCovering(JCas, Class, Class)} or a {@link ContainmentIndex}.
+	 * <b>Note:</b> if you need to look up the covering annotations for all annotations of a type,
+	 * consider using {@link #indexCovering(JCas, Class, Class)} or a {@link ContainmentIndex}.
 	 *
 	 * @param <T>
 	 *            the JCas type.
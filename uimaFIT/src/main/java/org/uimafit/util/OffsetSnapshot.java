@@ -0,0 +1,687 @@
+/*
+ Copyright 2012
+ Ubiquitous Knowledge Processing (UKP) Lab
+ Technische Universitaet Darmstadt
+ All rights reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.uimafit.util;
+
+import static java.util.Collections.unmodifiableList;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.FSIndexRepository;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.impl.FSIndexRepositoryImpl;
+import org.apache.uima.cas.impl.LowLevelCAS;
+import org.apache.uima.cas.impl.LowLevelIndex;
+import org.apache.uima.cas.impl.LowLevelIterator;
+import org.apache.uima.cas.impl.LowLevelTypeSystem;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.util.Level;
+
+/**
+ * Materialized view of the offsets of all annotations of a given type in a CAS. The annotations
+ * are kept in annotation index order (ascending begin, descending end, type priority) as parallel
+ * arrays of feature structure addresses, begin offsets and end offsets. Lookups are done using
+ * binary search on these arrays instead of walking an {@link org.apache.uima.cas.FSIterator}.
+ * <p>
+ * Each lookup comes in two flavors: one returning a new list and one adding the results to a
+ * collection provided by the caller. The latter can be used to avoid allocating a new list for
+ * each of many lookups, e.g. by re-using an {@link ArrayList} that is cleared before each call.
+ * <p>
+ * Snapshots obtained via {@link #get(CAS, Type)} are cached per CAS view and type. All snapshots of
+ * a CAS view are dropped when any feature structure is added to or removed from its indexes or
+ * when the CAS is reset, so a snapshot is rebuilt lazily on the first lookup after a change. The
+ * cache only holds on to the CAS weakly and keeps at most {@value #MAX_CACHED_TYPES} types per CAS
+ * view. Changes are detected using internal UIMA state. If that is not accessible, a warning is
+ * logged and snapshots are not cached.
+ * <p>
+ * A snapshot does not reflect changes to the CAS made after it was obtained. Do not hold on to
+ * a snapshot while modifying the indexes - obtain a new one instead.
+ *
+ * @author Richard Eckart de Castilho
+ *
+ * @param <T>
+ *            annotation type.
+ */
+public class OffsetSnapshot<T extends AnnotationFS> {
+	/**
+	 * Maximum number of types for which snapshots are cached per CAS view.
+	 */
+	static final int MAX_CACHED_TYPES = 16;
+
+	private static final Map<CAS, CasEntry> CACHE = new WeakHashMap<CAS, CasEntry>();
+
+	private static final Field UPDATE_COUNTERS;
+
+	static {
+		Field field;
+		try {
+			field = FSIndexRepositoryImpl.class.getDeclaredField("detectIllegalIndexUpdates");
+			field.setAccessible(true);
+		}
+		catch (Exception e) {
+			UIMAFramework.getLogger(OffsetSnapshot.class).log(Level.WARNING,
+					"Cannot detect index modifications with this UIMA version - offset snapshots "
+							+ "are not cached: " + e);
+			field = null;
+		}
+		UPDATE_COUNTERS = field;
+	}
+
+	private final CAS cas;
+
+	private final Data data;
+
+	private OffsetSnapshot(CAS aCas, Data aData) {
+		cas = aCas;
+		data = aData;
+	}
+
+	/**
+	 * Get the number of annotations in the snapshot.
+	 *
+	 * @return the number of annotations.
+	 */
+	public int size() {
+		return data.size;
+	}
+
+	/**
+	 * Get the annotation at the given position in the snapshot.
+	 *
+	 * @param aIndex
+	 *            the position.
+	 * @return the annotation.
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int aIndex) {
+		return (T) cas.getLowLevelCAS().ll_getFSForRef(data.refs[aIndex]);
+	}
+
+	/**
+	 * Get the feature structure address of the annotation at the given position in the snapshot.
+	 */
+	int getAddress(int aIndex) {
+		return data.refs[aIndex];
+	}
+
+	/**
+	 * Get the begin offset of the annotation at the given position in the snapshot.
+	 *
+	 * @param aIndex
+	 *            the position.
+	 * @return the begin offset.
+	 */
+	public int getBegin(int aIndex) {
+		return data.begins[aIndex];
+	}
+
+	/**
+	 * Get the end offset of the annotation at the given position in the snapshot.
+	 *
+	 * @param aIndex
+	 *            the position.
+	 * @return the end offset.
+	 */
+	public int getEnd(int aIndex) {
+		return data.ends[aIndex];
+	}
+
+	/**
+	 * Get the position of the given annotation in the snapshot.
+	 *
+	 * @param aAnnotation
+	 *            an annotation.
+	 * @return the position or {@code -1} if the annotation is not part of the snapshot.
+	 */
+	public int indexOf(AnnotationFS aAnnotation) {
+		int ref = cas.getLowLevelCAS().ll_getFSRef(aAnnotation);
+		int begin = aAnnotation.getBegin();
+		for (int i = lowerBound(begin); i < data.size && data.begins[i] == begin; i++) {
+			if (data.refs[i] == ref) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the annotations covered by the given offsets, i.e. all annotations starting at or after
+	 * {@code aBegin} and ending at or before {@code aEnd}. The annotations are returned in index
+	 * order.
+	 *
+	 * @param aBegin
+	 *            begin offset.
+	 * @param aEnd
+	 *            end offset.
+	 * @return the covered annotations.
+	 */
+	public List<T> selectCovered(int aBegin, int aEnd) {
+		List<T> list = new ArrayList<T>();
+		collectCovered(aBegin, aEnd, 0, 0, list);
+		return unmodifiableList(list);
+	}
+
+	/**
+	 * Add the annotations covered by the given offsets to the given collection.
+	 *
+	 * @param aBegin
+	 *            begin offset.
+	 * @param aEnd
+	 *            end offset.
+	 * @param aTarget
+	 *            the collection the annotations are added to in index order.
+	 * @return the number of annotations added.
+	 * @see #selectCovered(int, int)
+	 */
+	public int selectCovered(int aBegin, int aEnd, Collection<? super T> aTarget) {
+		return collectCovered(aBegin, aEnd, 0, 0, aTarget);
+	}
+
+	/**
+	 * Get the annotations covered by the given annotation. The covering annotation itself is not
+	 * part of the result.
+	 *
+	 * @param aCovering
+	 *            the covering annotation.
+	 * @return the covered annotations.
+	 */
+	public List<T> selectCovered(AnnotationFS aCovering) {
+		List<T> list = new ArrayList<T>();
+		selectCovered(aCovering, list);
+		return unmodifiableList(list);
+	}
+
+	/**
+	 * Add the annotations covered by the given annotation to the given collection. The covering
+	 * annotation itself is not added.
+	 *
+	 * @param aCovering
+	 *            the covering annotation.
+	 * @param aTarget
+	 *            the collection the annotations are added to in index order.
+	 * @return the number of annotations added.
+	 * @see #selectCovered(AnnotationFS)
+	 */
+	public int selectCovered(AnnotationFS aCovering, Collection<? super T> aTarget) {
+		int ref = cas.getLowLevelCAS().ll_getFSRef(aCovering);
+		return collectCovered(aCovering.getBegin(), aCovering.getEnd(), ref, ref, aTarget);
+	}
+
+	/**
+	 * Get the annotations covering the given offsets, i.e. all annotations starting at or before
+	 * {@code aBegin} and ending at or after {@code aEnd}. The annotations are returned in index
+	 * order.
+	 *
+	 * @param aBegin
+	 *            begin offset.
+	 * @param aEnd
+	 *            end offset.
+	 * @return the covering annotations.
+	 */
+	public List<T> selectCovering(int aBegin, int aEnd) {
+		List<T> list = new ArrayList<T>();
+		selectCovering(aBegin, aEnd, list);
+		return unmodifiableList(list);
+	}
+
+	/**
+	 * Add the annotations covering the given offsets to the given collection.
+	 *
+	 * @param aBegin
+	 *            begin offset.
+	 * @param aEnd
+	 *            end offset.
+	 * @param aTarget
+	 *            the collection the annotations are added to in index order.
+	 * @return the number of annotations added.
+	 * @see #selectCovering(int, int)
+	 */
+	public int selectCovering(int aBegin, int aEnd, Collection<? super T> aTarget) {
+		// All candidates start at or before the begin offset, so they form a prefix of the arrays.
+		int limit = upperBound(aBegin);
+		if (limit == 0) {
+			return 0;
+		}
+		return collectCovering(data.getMaxEnds(), 1, 0, data.leaves, limit, aEnd, aTarget);
+	}
+
+	/**
+	 * Get the annotations located between two annotations. The semantics are the same as for
+	 * {@link CasUtil#selectBetween(CAS, Type, AnnotationFS, AnnotationFS)}.
+	 *
+	 * @param aAnn1
+	 *            the first boundary annotation.
+	 * @param aAnn2
+	 *            the second boundary annotation.
+	 * @return the annotations between the boundary annotations.
+	 */
+	public List<T> selectBetween(AnnotationFS aAnn1, AnnotationFS aAnn2) {
+		List<T> list = new ArrayList<T>();
+		selectBetween(aAnn1, aAnn2, list);
+		return unmodifiableList(list);
+	}
+
+	/**
+	 * Add the annotations located between two annotations to the given collection.
+	 *
+	 * @param aAnn1
+	 *            the first boundary annotation.
+	 * @param aAnn2
+	 *            the second boundary annotation.
+	 * @param aTarget
+	 *            the collection the annotations are added to in index order.
+	 * @return the number of annotations added.
+	 * @see #selectBetween(AnnotationFS, AnnotationFS)
+	 */
+	public int selectBetween(AnnotationFS aAnn1, AnnotationFS aAnn2, Collection<? super T> aTarget) {
+		AnnotationFS left;
+		AnnotationFS right;
+		if (aAnn1.getEnd() > aAnn2.getBegin()) {
+			left = aAnn2;
+			right = aAnn1;
+		}
+		else {
+			left = aAnn1;
+			right = aAnn2;
+		}
+		LowLevelCAS llCas = cas.getLowLevelCAS();
+		return collectCovered(left.getEnd(), right.getBegin(), llCas.ll_getFSRef(left),
+				llCas.ll_getFSRef(right), aTarget);
+	}
+
+	/**
+	 * Get up to {@code aCount} annotations that end at or before the begin of the given anchor
+	 * annotation. If there are more such annotations, those closest to the anchor are returned.
+	 * The annotations are returned in index order.
+	 *
+	 * @param aAnchor
+	 *            the anchor annotation.
+	 * @param aCount
+	 *            the maximum number of annotations to return.
+	 * @return the preceding annotations.
+	 */
+	public List<T> selectPreceding(AnnotationFS aAnchor, int aCount) {
+		List<T> list = new ArrayList<T>();
+		selectPreceding(aAnchor, aCount, list);
+		return unmodifiableList(list);
+	}
+
+	/**
+	 * Add up to {@code aCount} annotations preceding the given anchor annotation to the given
+	 * collection.
+	 *
+	 * @param aAnchor
+	 *            the anchor annotation.
+	 * @param aCount
+	 *            the maximum number of annotations to add.
+	 * @param aTarget
+	 *            the collection the annotations are added to in index order.
+	 * @return the number of annotations added.
+	 * @see #selectPreceding(AnnotationFS, int)
+	 */
+	public int selectPreceding(AnnotationFS aAnchor, int aCount, Collection<? super T> aTarget) {
+		int ref = cas.getLowLevelCAS().ll_getFSRef(aAnchor);
+		int begin = aAnchor.getBegin();
+
+		// Find the first of the preceding annotations by walking backwards from the anchor.
+		int found = 0;
+		int first = lowerBound(begin);
+		for (int i = first - 1; i >= 0 && found < aCount; i--) {
+			if (data.ends[i] <= begin && data.refs[i] != ref) {
+				first = i;
+				found++;
+			}
+		}
+
+		// Add them in index order.
+		int added = 0;
+		for (int i = first; added < found; i++) {
+			if (data.ends[i] <= begin && data.refs[i] != ref) {
+				aTarget.add(get(i));
+				added++;
+			}
+		}
+		return added;
+	}
+
+	/**
+	 * Get up to {@code aCount} annotations that start at or after the end of the given anchor
+	 * annotation. The annotations are returned in index order.
+	 *
+	 * @param aAnchor
+	 *            the anchor annotation.
+	 * @param aCount
+	 *            the maximum number of annotations to return.
+	 * @return the following annotations.
+	 */
+	public List<T> selectFollowing(AnnotationFS aAnchor, int aCount) {
+		List<T> list = new ArrayList<T>();
+		selectFollowing(aAnchor, aCount, list);
+		return unmodifiableList(list);
+	}
+
+	/**
+	 * Add up to {@code aCount} annotations following the given anchor annotation to the given
+	 * collection.
+	 *
+	 * @param aAnchor
+	 *            the anchor annotation.
+	 * @param aCount
+	 *            the maximum number of annotations to add.
+	 * @param aTarget
+	 *            the collection the annotations are added to in index order.
+	 * @return the number of annotations added.
+	 * @see #selectFollowing(AnnotationFS, int)
+	 */
+	public int selectFollowing(AnnotationFS aAnchor, int aCount, Collection<? super T> aTarget) {
+		int ref = cas.getLowLevelCAS().ll_getFSRef(aAnchor);
+		int added = 0;
+		for (int i = lowerBound(aAnchor.getEnd()); i < data.size && added < aCount; i++) {
+			if (data.refs[i] != ref) {
+				aTarget.add(get(i));
+				added++;
+			}
+		}
+		return added;
+	}
+
+	/**
+	 * Add all annotations within the given offsets to the target collection, skipping the two
+	 * excluded feature structure addresses.
+	 */
+	private int collectCovered(int aBegin, int aEnd, int aExclude1, int aExclude2,
+			Collection<? super T> aTarget) {
+		int added = 0;
+		for (int i = lowerBound(aBegin); i < data.size && data.begins[i] <= aEnd; i++) {
+			int ref = data.refs[i];
+			if (data.ends[i] <= aEnd && ref != aExclude1 && ref != aExclude2) {
+				aTarget.add(get(i));
+				added++;
+			}
+		}
+		return added;
+	}
+
+	/**
+	 * Walk the max-end tree depth-first, left to right, descending only into sub-trees that
+	 * contain an annotation ending at or after the given end offset.
+	 */
+	private int collectCovering(int[] aMaxEnds, int aNode, int aFrom, int aTo, int aLimit,
+			int aEnd, Collection<? super T> aTarget) {
+		if (aFrom >= aLimit || aMaxEnds[aNode] < aEnd) {
+			return 0;
+		}
+		if (aTo - aFrom == 1) {
+			aTarget.add(get(aFrom));
+			return 1;
+		}
+		int mid = (aFrom + aTo) >>> 1;
+		return collectCovering(aMaxEnds, 2 * aNode, aFrom, mid, aLimit, aEnd, aTarget)
+				+ collectCovering(aMaxEnds, 2 * aNode + 1, mid, aTo, aLimit, aEnd, aTarget);
+	}
+
+	/**
+	 * Get the position of the first annotation starting at or after the given offset.
+	 */
+	private int lowerBound(int aOffset) {
+		int[] begins = data.begins;
+		int lo = 0;
+		int hi = data.size;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (begins[mid] < aOffset) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Get the position of the first annotation starting after the given offset.
+	 */
+	private int upperBound(int aOffset) {
+		int[] begins = data.begins;
+		int lo = 0;
+		int hi = data.size;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (begins[mid] <= aOffset) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Get a snapshot of the annotations of the given type. If the annotation index has not changed
+	 * since the last time a snapshot was obtained for the given CAS view and type, the previous
+	 * snapshot data is re-used. Otherwise a new snapshot is created.
+	 *
+	 * @param aCas
+	 *            a CAS view.
+	 * @param aType
+	 *            an annotation type.
+	 * @return the snapshot.
+	 */
+	public static OffsetSnapshot<AnnotationFS> get(CAS aCas, Type aType) {
+		if (!aCas.getTypeSystem().subsumes(aCas.getAnnotationType(), aType)) {
+			throw new IllegalArgumentException("Type [" + aType.getName()
+					+ "] is not an annotation type");
+		}
+
+		int[] counters = getUpdateCounters(aCas);
+		if (counters == null) {
+			return new OffsetSnapshot<AnnotationFS>(aCas, new Data(aCas, aType));
+		}
+
+		CasEntry entry;
+		synchronized (CACHE) {
+			entry = CACHE.get(aCas);
+			if (entry == null) {
+				entry = new CasEntry();
+				CACHE.put(aCas, entry);
+			}
+		}
+
+		synchronized (entry) {
+			entry.validate(aCas, counters);
+			Data data = entry.types.get(aType);
+			if (data == null) {
+				data = new Data(aCas, aType);
+				entry.types.put(aType, data);
+			}
+			return new OffsetSnapshot<AnnotationFS>(aCas, data);
+		}
+	}
+
+	/**
+	 * Get a snapshot of the annotations of the given type.
+	 *
+	 * @param <T>
+	 *            the JCas type.
+	 * @param aJCas
+	 *            a JCas view.
+	 * @param aType
+	 *            an annotation type.
+	 * @return the snapshot.
+	 * @see #get(CAS, Type)
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static <T extends AnnotationFS> OffsetSnapshot<T> get(JCas aJCas, Class<T> aType) {
+		return (OffsetSnapshot) get(aJCas.getCas(), JCasUtil.getType(aJCas, aType));
+	}
+
+	/**
+	 * Create a new snapshot of the annotations of the given type bypassing the cache.
+	 *
+	 * @param aCas
+	 *            a CAS view.
+	 * @param aType
+	 *            an annotation type.
+	 * @return the snapshot.
+	 */
+	public static OffsetSnapshot<AnnotationFS> create(CAS aCas, Type aType) {
+		if (!aCas.getTypeSystem().subsumes(aCas.getAnnotationType(), aType)) {
+			throw new IllegalArgumentException("Type [" + aType.getName()
+					+ "] is not an annotation type");
+		}
+		return new OffsetSnapshot<AnnotationFS>(aCas, new Data(aCas, aType));
+	}
+
+	/**
+	 * Get the per-type index update counters of the given CAS view. UIMA increments these
+	 * whenever a feature structure is added to or removed from the indexes.
+	 *
+	 * @return the counters or {@code null} if they cannot be accessed.
+	 */
+	private static int[] getUpdateCounters(CAS aCas) {
+		if (UPDATE_COUNTERS == null) {
+			return null;
+		}
+		FSIndexRepository repository = aCas.getIndexRepository();
+		if (!(repository instanceof FSIndexRepositoryImpl)) {
+			return null;
+		}
+		try {
+			return (int[]) UPDATE_COUNTERS.get(repository);
+		}
+		catch (IllegalAccessException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * The cached snapshots of a CAS view. This must not reference the CAS, otherwise the weak cache
+	 * would never be cleared.
+	 */
+	private static class CasEntry {
+		final Map<Type, Data> types = new LinkedHashMap<Type, Data>(MAX_CACHED_TYPES, 0.75f,
+				true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Type, Data> aEldest) {
+				return size() > MAX_CACHED_TYPES;
+			}
+		};
+		long updates = -1;
+		int annotations = -1;
+
+		/**
+		 * Drop all snapshots if the indexes have changed since they were taken. The number of
+		 * annotations is checked as well because the update counters are not touched when the CAS
+		 * is reset.
+		 */
+		void validate(CAS aCas, int[] aCounters) {
+			long u = 0;
+			for (int c : aCounters) {
+				u += c;
+			}
+			int a = aCas.getAnnotationIndex().size();
+			if (u != updates || a != annotations) {
+				types.clear();
+				updates = u;
+				annotations = a;
+			}
+		}
+	}
+
+	/**
+	 * Snapshot data. This must not reference the CAS, otherwise the weak cache would never be
+	 * cleared.
+	 */
+	private static class Data {
+		final int size;
+		final int leaves;
+		final int[] refs;
+		final int[] begins;
+		final int[] ends;
+		private volatile int[] maxEnds;
+
+		Data(CAS aCas, Type aType) {
+			LowLevelCAS llCas = aCas.getLowLevelCAS();
+			LowLevelTypeSystem llTs = llCas.ll_getTypeSystem();
+
+			List<Type> subTypes = aCas.getTypeSystem().getProperlySubsumedTypes(aType);
+			int[] typeCodes = new int[subTypes.size() + 1];
+			typeCodes[0] = llTs.ll_getCodeForType(aType);
+			for (int i = 0; i < subTypes.size(); i++) {
+				typeCodes[i + 1] = llTs.ll_getCodeForType(subTypes.get(i));
+			}
+
+			int beginFeat = llTs.ll_getCodeForFeature(aCas.getBeginFeature());
+			int endFeat = llTs.ll_getCodeForFeature(aCas.getEndFeature());
+			LowLevelIndex index = llCas.ll_getIndexRepository().ll_getIndex(
+					CAS.STD_ANNOTATION_INDEX, typeCodes[0]);
+			size = index.size();
+			refs = new int[size];
+			begins = new int[size];
+			ends = new int[size];
+			int i = 0;
+			LowLevelIterator it = index.ll_iterator();
+			for (it.moveToFirst(); it.isValid(); it.moveToNext()) {
+				int ref = it.ll_get();
+				refs[i] = ref;
+				begins[i] = llCas.ll_getIntValue(ref, beginFeat);
+				ends[i] = llCas.ll_getIntValue(ref, endFeat);
+				i++;
+			}
+
+			int l = 1;
+			while (l < size) {
+				l <<= 1;
+			}
+			leaves = l;
+		}
+
+		/**
+		 * Get the implicit binary tree holding the maximum end offset of each sub-range of the
+		 * snapshot. Node 1 is the root, the children of node n are 2n and 2n+1 and the leaves start
+		 * at {@link #leaves}. The tree is only built when first needed.
+		 */
+		int[] getMaxEnds() {
+			int[] tree = maxEnds;
+			if (tree == null) {
+				tree = new int[2 * leaves];
+				Arrays.fill(tree, Integer.MIN_VALUE);
+				System.arraycopy(ends, 0, tree, leaves, size);
+				for (int n = leaves - 1; n > 0; n--) {
+					tree[n] = Math.max(tree[2 * n], tree[2 * n + 1]);
+				}
+				maxEnds = tree;
+			}
+			return tree;
+		}
+	}
+}
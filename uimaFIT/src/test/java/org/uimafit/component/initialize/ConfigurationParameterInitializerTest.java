@@ -482,4 +482,23 @@ public class ConfigurationParameterInitializerTest extends ComponentTestBase {
 		aed.toXML(new FileOutputStream("src/test/resources/data/descriptor/DefaultValueAE2.xml"));
 	}
 
+	@Test
+	public void testValuesNotShared() throws Exception {
+		AnalysisEngine engine = AnalysisEngineFactory.createPrimitive(ParameterizedAE.class,
+				typeSystemDescription, ParameterizedAE.PARAM_FLOAT_3, 1.234f,
+				ParameterizedAE.PARAM_FLOAT_6, new Float[] { 1.234f, 0.001f }, "file2", "foo/bar");
+
+		// Components of the same class are initialized from the cached bindings. Modifying the
+		// values of one component must not affect the others.
+		ParameterizedAE component1 = new ParameterizedAE();
+		component1.initialize(engine.getUimaContext());
+		component1.getString2()[0] = "changed";
+		component1.getString4()[0] = "changed";
+
+		ParameterizedAE component2 = new ParameterizedAE();
+		component2.initialize(engine.getUimaContext());
+		assertArrayEquals(new String[] { "coconut", "mango" }, component2.getString2());
+		assertArrayEquals(new String[] { "apple" }, component2.getString4());
+		assertEquals(1.234f, component2.getFloat3(), 0.001f);
+	}
 }
@@ -20,17 +20,27 @@ package org.uimafit.component.xwriter;
 
 import static org.apache.commons.io.FileUtils.readFileToString;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 
 import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.cas.BooleanArrayFS;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.IntArrayFS;
+import org.apache.uima.cas.StringArrayFS;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
 import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.TypeDescription;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.uimafit.factory.AnalysisEngineFactory;
 import org.uimafit.factory.JCasFactory;
+import org.uimafit.factory.TypeSystemDescriptionFactory;
 
 /**
  * @author Richard Eckart de Castilho
@@ -58,4 +68,75 @@ public class CASDumpWriterTest {
 
 		assertEquals(reference, actual);
 	}
+
+	@Test
+	public void testFeatureStructuresLikeToString() throws Exception {
+		File outputFile = new File(folder.getRoot(), "dump-output.txt");
+
+		TypeSystemDescription tsd = TypeSystemDescriptionFactory.createTypeSystemDescription();
+		TypeDescription td = tsd.addType("test.Rich", "", CAS.TYPE_NAME_ANNOTATION);
+		td.addFeature("strings", "", CAS.TYPE_NAME_STRING_ARRAY);
+		td.addFeature("ints", "", CAS.TYPE_NAME_INTEGER_ARRAY);
+		td.addFeature("floats", "", CAS.TYPE_NAME_FLOAT_ARRAY);
+		td.addFeature("booleans", "", CAS.TYPE_NAME_BOOLEAN_ARRAY);
+		td.addFeature("longs", "", CAS.TYPE_NAME_LONG_ARRAY);
+		td.addFeature("text", "", CAS.TYPE_NAME_STRING);
+		td.addFeature("ratio", "", CAS.TYPE_NAME_DOUBLE);
+		td.addFeature("flag", "", CAS.TYPE_NAME_BOOLEAN);
+		td.addFeature("other", "", "test.Rich");
+		td.addFeature("same", "", "test.Rich");
+
+		AnalysisEngine writer = AnalysisEngineFactory.createPrimitive(CASDumpWriter.class, tsd,
+				CASDumpWriter.PARAM_OUTPUT_FILE, outputFile.getPath());
+		CAS cas = writer.newCAS();
+		cas.setDocumentText("Some text");
+		Type type = cas.getTypeSystem().getType("test.Rich");
+
+		AnnotationFS a = cas.createAnnotation(type, 0, 4);
+		AnnotationFS b = cas.createAnnotation(type, 5, 9);
+		StringArrayFS strings = cas.createStringArrayFS(2);
+		strings.set(0, "x");
+		a.setFeatureValue(type.getFeatureByBaseName("strings"), strings);
+		IntArrayFS ints = cas.createIntArrayFS(2);
+		ints.set(1, 42);
+		a.setFeatureValue(type.getFeatureByBaseName("ints"), ints);
+		a.setFeatureValue(type.getFeatureByBaseName("floats"), cas.createFloatArrayFS(0));
+		BooleanArrayFS booleans = cas.createBooleanArrayFS(2);
+		booleans.set(0, true);
+		a.setFeatureValue(type.getFeatureByBaseName("booleans"), booleans);
+		a.setFeatureValue(type.getFeatureByBaseName("longs"), cas.createLongArrayFS(20));
+		a.setStringValue(type.getFeatureByBaseName("text"), "value");
+		a.setDoubleValue(type.getFeatureByBaseName("ratio"), 0.5);
+		a.setBooleanValue(type.getFeatureByBaseName("flag"), true);
+		a.setFeatureValue(type.getFeatureByBaseName("other"), b);
+		a.setFeatureValue(type.getFeatureByBaseName("same"), b);
+		b.setFeatureValue(type.getFeatureByBaseName("other"), a);
+		cas.addFsToIndexes(a);
+		cas.addFsToIndexes(b);
+
+		writer.process(cas);
+
+		String actual = readFileToString(outputFile, "UTF-8").replaceAll("\r\n", "\n");
+		assertTrue(actual.contains("[Some]\n" + a.toString()));
+		assertTrue(actual.contains("[text]\n" + b.toString()));
+	}
+
+	@Test
+	public void testPatterns() throws Exception {
+		File outputFile = new File(folder.getRoot(), "dump-output.txt");
+
+		AnalysisEngine writer = AnalysisEngineFactory.createPrimitive(CASDumpWriter.class,
+				CASDumpWriter.PARAM_OUTPUT_FILE, outputFile.getPath(),
+				CASDumpWriter.PARAM_FEATURE_PATTERNS, new String[] { "+|.*", "-|^.*stem: $" },
+				CASDumpWriter.PARAM_TYPE_PATTERNS, new String[] { "-|.*Sentence", "+|.*" });
+		JCas jcas = writer.newJCas();
+		JCasFactory.loadJCas(jcas, "src/test/resources/data/docs/test.xmi");
+		writer.process(jcas);
+
+		String actual = readFileToString(outputFile, "UTF-8");
+		assertTrue(actual.contains("pos: \"M\""));
+		assertFalse(actual.contains("stem:"));
+		assertTrue(actual.contains("Token"));
+		assertFalse(actual.contains("Sentence"));
+	}
 }
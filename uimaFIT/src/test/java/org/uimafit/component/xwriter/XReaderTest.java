@@ -0,0 +1,182 @@
+/*
+ Copyright 2012
+ Ubiquitous Knowledge Processing (UKP) Lab
+ Technische Universitaet Darmstadt
+ All rights reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.uimafit.component.xwriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.collection.CollectionException;
+import org.apache.uima.collection.CollectionReader;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.uimafit.ComponentTestBase;
+import org.uimafit.factory.AnalysisEngineFactory;
+import org.uimafit.factory.CollectionReaderFactory;
+import org.uimafit.type.Token;
+import org.uimafit.util.JCasUtil;
+
+/**
+ * @author Richard Eckart de Castilho
+ */
+public class XReaderTest extends ComponentTestBase {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File outputDirectory;
+
+	@Before
+	public void setup() {
+		outputDirectory = folder.newFolder("output");
+	}
+
+	@Test
+	public void testSegments() throws Exception {
+		write(10, XWriter.PARAM_XML_SCHEME_NAME, XWriter.BINARY, XWriter.PARAM_COMPRESSION,
+				XWriter.GZIP, XWriter.PARAM_SEGMENT_SIZE, 1000);
+		assertTrue(outputDirectory.list().length > 2);
+
+		List<String> texts = read(0, 1);
+		assertEquals(10, texts.size());
+		for (int i = 0; i < 10; i++) {
+			assertEquals("I like spam " + i, texts.get(i));
+		}
+	}
+
+	@Test
+	public void testSegmentsWithoutIndex() throws Exception {
+		write(5, XWriter.PARAM_SEGMENT_SIZE, Integer.MAX_VALUE);
+		assertTrue(new File(outputDirectory, "segment-00000.idx").delete());
+
+		List<String> texts = read(0, 1);
+		assertEquals(5, texts.size());
+		assertEquals("I like spam 4", texts.get(4));
+	}
+
+	@Test
+	public void testTruncatedSegment() throws Exception {
+		write(5, XWriter.PARAM_SEGMENT_SIZE, Integer.MAX_VALUE);
+		File segment = new File(outputDirectory, "segment-00000.seg");
+		RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+		try {
+			raf.setLength(raf.length() - 10);
+		}
+		finally {
+			raf.close();
+		}
+
+		CollectionReader reader = CollectionReaderFactory.createCollectionReader(XReader.class,
+				typeSystemDescription, XReader.PARAM_INPUT_DIRECTORY_NAME,
+				outputDirectory.getPath());
+		int read = 0;
+		try {
+			while (reader.hasNext()) {
+				jCas.reset();
+				reader.getNext(jCas.getCas());
+				read++;
+			}
+			fail("Expected the truncated entry to be reported");
+		}
+		catch (CollectionException e) {
+			// The entries before the truncated one are intact
+			assertEquals(4, read);
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testTruncatedIndex() throws Exception {
+		write(5, XWriter.PARAM_SEGMENT_SIZE, Integer.MAX_VALUE);
+		File index = new File(outputDirectory, "segment-00000.idx");
+		RandomAccessFile raf = new RandomAccessFile(index, "rw");
+		try {
+			raf.setLength(raf.length() - 3);
+		}
+		finally {
+			raf.close();
+		}
+
+		// The partial last line is ignored
+		List<String> texts = read(0, 1);
+		assertEquals(4, texts.size());
+		assertEquals("I like spam 3", texts.get(3));
+	}
+
+	@Test
+	public void testShards() throws Exception {
+		write(10, XWriter.PARAM_XML_SCHEME_NAME, XWriter.XCAS);
+
+		Set<String> texts = new HashSet<String>();
+		int[] sizes = new int[3];
+		for (int shard = 0; shard < 3; shard++) {
+			List<String> shardTexts = read(shard, 3);
+			sizes[shard] = shardTexts.size();
+			texts.addAll(shardTexts);
+		}
+		assertEquals(10, texts.size());
+		assertEquals(3, sizes[0]);
+		assertEquals(3, sizes[1]);
+		assertEquals(4, sizes[2]);
+	}
+
+	private void write(int aCount, Object... aParameters) throws Exception {
+		List<Object> parameters = new ArrayList<Object>();
+		parameters.add(XWriter.PARAM_OUTPUT_DIRECTORY_NAME);
+		parameters.add(outputDirectory.getPath());
+		for (Object p : aParameters) {
+			parameters.add(p);
+		}
+		AnalysisEngine writer = AnalysisEngineFactory.createPrimitive(XWriter.class,
+				typeSystemDescription, parameters.toArray());
+		for (int i = 0; i < aCount; i++) {
+			jCas.reset();
+			tokenBuilder.buildTokens(jCas, "I like spam " + i);
+			writer.process(jCas);
+		}
+		writer.collectionProcessComplete();
+	}
+
+	private List<String> read(int aShard, int aShardCount) throws Exception {
+		CollectionReader reader = CollectionReaderFactory.createCollectionReader(XReader.class,
+				typeSystemDescription, XReader.PARAM_INPUT_DIRECTORY_NAME,
+				outputDirectory.getPath(), XReader.PARAM_SHARD, aShard, XReader.PARAM_SHARD_COUNT,
+				aShardCount);
+		List<String> texts = new ArrayList<String>();
+		while (reader.hasNext()) {
+			jCas.reset();
+			reader.getNext(jCas.getCas());
+			assertEquals(4, JCasUtil.select(jCas, Token.class).size());
+			texts.add(jCas.getDocumentText());
+		}
+		reader.close();
+		return texts;
+	}
+}
@@ -19,14 +19,22 @@ package org.uimafit.component.xwriter;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.io.StringReader;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 import org.apache.uima.UIMAException;
 import org.apache.uima.analysis_engine.AnalysisEngine;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.impl.Serialization;
+import org.apache.uima.cas.impl.XmiCasDeserializer;
 import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.util.FileUtils;
 import org.jdom.Document;
@@ -46,6 +54,8 @@ import org.uimafit.factory.testAes.Annotator1;
 import org.uimafit.factory.testAes.Annotator2;
 import org.uimafit.factory.testAes.Annotator3;
 import org.uimafit.factory.testAes.ViewNames;
+import org.uimafit.type.Token;
+import org.uimafit.util.JCasUtil;
 
 /**
  * @author Philip Ogren
@@ -180,6 +190,158 @@ public class XWriterTest extends ComponentTestBase {
 
 	}
 
+	@Test
+	public void testBinaryGzip() throws Exception {
+		AnalysisEngine engine = AnalysisEngineFactory.createPrimitive(XWriter.class,
+				typeSystemDescription, XWriter.PARAM_OUTPUT_DIRECTORY_NAME,
+				this.outputDirectory.getPath(), XWriter.PARAM_XML_SCHEME_NAME, XWriter.BINARY,
+				XWriter.PARAM_COMPRESSION, XWriter.GZIP);
+		tokenBuilder.buildTokens(jCas, "I like\nspam!", "I like spam !", "PRP VB NN .");
+		engine.process(jCas);
+		engine.collectionProcessComplete();
+
+		File outputFile = new File(this.outputDirectory, "1.bin.gz");
+		assertTrue(outputFile.exists());
+
+		jCas.reset();
+		InputStream in = new GZIPInputStream(new FileInputStream(outputFile));
+		try {
+			Serialization.deserializeCAS(jCas.getCas(), in);
+		}
+		finally {
+			in.close();
+		}
+		assertEquals("I like\nspam!", jCas.getDocumentText());
+		assertEquals(4, JCasUtil.select(jCas, Token.class).size());
+	}
+
+	@Test
+	public void testXmiDeflate() throws Exception {
+		AnalysisEngine engine = AnalysisEngineFactory.createPrimitive(XWriter.class,
+				typeSystemDescription, XWriter.PARAM_OUTPUT_DIRECTORY_NAME,
+				this.outputDirectory.getPath(), XWriter.PARAM_COMPRESSION, XWriter.DEFLATE);
+		tokenBuilder.buildTokens(jCas, "I like\nspam!", "I like spam !", "PRP VB NN .");
+		engine.process(jCas);
+		engine.collectionProcessComplete();
+
+		File outputFile = new File(this.outputDirectory, "1.xmi.zz");
+		assertTrue(outputFile.exists());
+
+		jCas.reset();
+		InputStream in = new InflaterInputStream(new FileInputStream(outputFile));
+		try {
+			XmiCasDeserializer.deserialize(in, jCas.getCas());
+		}
+		finally {
+			in.close();
+		}
+		assertEquals("I like\nspam!", jCas.getDocumentText());
+		assertEquals(4, JCasUtil.select(jCas, Token.class).size());
+	}
+
+	@Test
+	public void testAsync() throws Exception {
+		AnalysisEngine engine = AnalysisEngineFactory.createPrimitive(XWriter.class,
+				typeSystemDescription, XWriter.PARAM_OUTPUT_DIRECTORY_NAME,
+				this.outputDirectory.getPath(), XWriter.PARAM_WRITER_THREADS, 2);
+		for (int i = 0; i < 10; i++) {
+			jCas.reset();
+			tokenBuilder.buildTokens(jCas, "I like spam " + i);
+			engine.process(jCas);
+		}
+		engine.collectionProcessComplete();
+
+		for (int i = 0; i < 10; i++) {
+			jCas.reset();
+			JCasFactory.loadJCas(jCas, new File(outputDirectory, (i + 1) + ".xmi").getPath());
+			assertEquals("I like spam " + i, jCas.getDocumentText());
+		}
+	}
+
+	@Test(expected = AnalysisEngineProcessException.class)
+	public void testAsyncFailure() throws Exception {
+		// A directory where the file should go makes writing fail
+		assertTrue(new File(outputDirectory, "1.xmi").mkdirs());
+
+		AnalysisEngine engine = AnalysisEngineFactory.createPrimitive(XWriter.class,
+				typeSystemDescription, XWriter.PARAM_OUTPUT_DIRECTORY_NAME,
+				this.outputDirectory.getPath(), XWriter.PARAM_WRITER_THREADS, 1);
+		tokenBuilder.buildTokens(jCas, "I like spam");
+		engine.process(jCas);
+		engine.collectionProcessComplete();
+	}
+
+	@Test
+	public void testSegments() throws Exception {
+		AnalysisEngine engine = AnalysisEngineFactory.createPrimitive(XWriter.class,
+				typeSystemDescription, XWriter.PARAM_OUTPUT_DIRECTORY_NAME,
+				this.outputDirectory.getPath(), XWriter.PARAM_SEGMENT_SIZE, Integer.MAX_VALUE);
+		for (int i = 0; i < 5; i++) {
+			jCas.reset();
+			tokenBuilder.buildTokens(jCas, "I like spam " + i);
+			engine.process(jCas);
+		}
+		engine.collectionProcessComplete();
+
+		// A new segment is only started once the size is exceeded
+		assertEquals(2, outputDirectory.list().length);
+		File segment = new File(outputDirectory, "segment-00000.seg");
+		String[] index = FileUtils.file2String(new File(outputDirectory, "segment-00000.idx"))
+				.split("\n");
+		assertEquals(5, index.length);
+
+		RandomAccessFile in = new RandomAccessFile(segment, "r");
+		try {
+			for (int i = 0; i < 5; i++) {
+				String[] entry = index[i].split("\t");
+				assertEquals((i + 1) + ".xmi", entry[2]);
+
+				// The index points to the data following the record header
+				in.seek(Long.parseLong(entry[0]) - 6 - entry[2].length());
+				assertEquals(entry[2], in.readUTF());
+				byte[] data = new byte[in.readInt()];
+				assertEquals(Integer.parseInt(entry[1]), data.length);
+				in.readFully(data);
+
+				jCas.reset();
+				XmiCasDeserializer.deserialize(new ByteArrayInputStream(data), jCas.getCas());
+				assertEquals("I like spam " + i, jCas.getDocumentText());
+			}
+			assertEquals(in.length(), in.getFilePointer());
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void testSegmentRollover() throws Exception {
+		AnalysisEngine engine = AnalysisEngineFactory.createPrimitive(XWriter.class,
+				typeSystemDescription, XWriter.PARAM_OUTPUT_DIRECTORY_NAME,
+				this.outputDirectory.getPath(), XWriter.PARAM_SEGMENT_SIZE, 1,
+				XWriter.PARAM_WRITER_THREADS, 2);
+		for (int i = 0; i < 5; i++) {
+			jCas.reset();
+			tokenBuilder.buildTokens(jCas, "I like spam " + i);
+			engine.process(jCas);
+		}
+		engine.collectionProcessComplete();
+
+		assertEquals(10, outputDirectory.list().length);
+		for (int i = 0; i < 5; i++) {
+			assertEquals(1, FileUtils.file2String(
+					new File(outputDirectory, String.format("segment-%05d.idx", i))).split("\n")
+					.length);
+		}
+	}
+
+	@Test(expected = ResourceInitializationException.class)
+	public void testBadCompression() throws ResourceInitializationException {
+		AnalysisEngineFactory.createPrimitive(XWriter.class, typeSystemDescription,
+				XWriter.PARAM_OUTPUT_DIRECTORY_NAME, outputDirectory.getPath(),
+				XWriter.PARAM_COMPRESSION, "zip");
+	}
+
 	@Test(expected = ResourceInitializationException.class)
 	public void testBadXmlSchemeName() throws ResourceInitializationException {
 		AnalysisEngineFactory.createPrimitive(XWriter.class, typeSystemDescription,
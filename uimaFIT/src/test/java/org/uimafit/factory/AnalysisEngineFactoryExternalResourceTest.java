@@ -20,6 +20,7 @@
 package org.uimafit.factory;
 
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
 import static org.uimafit.factory.AnalysisEngineFactory.createAggregate;
 import static org.uimafit.factory.AnalysisEngineFactory.createAggregateDescription;
 import static org.uimafit.factory.AnalysisEngineFactory.createPrimitive;
@@ -29,6 +30,13 @@ import static org.uimafit.factory.ExternalResourceFactory.createExternalResource
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.uima.UIMAFramework;
@@ -38,6 +46,7 @@ import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.resource.CustomResourceSpecifier;
 import org.apache.uima.resource.ExternalResourceDescription;
+import org.apache.uima.resource.ResourceManager;
 import org.apache.uima.resource.ResourceCreationSpecifier;
 import org.apache.uima.resource.metadata.ExternalResourceBinding;
 import org.apache.uima.util.InvalidXMLException;
@@ -296,6 +305,95 @@ public class AnalysisEngineFactoryExternalResourceTest {
 		ae.process(ae.newCAS());
 	}
 
+	/**
+	 * Test nesting with engines sharing their resources being initialized in parallel.
+	 */
+	@Test
+	public void resource_testParallelNesting() throws Exception {
+		final AnalysisEngineDescription aeDesc = saveLoad(createPrimitiveDescription(
+				TestAnalysisEngineWithResource.class,
+				TestAnalysisEngineWithResource.PARAM_RESOURCE,
+				createExternalResourceDescription(TestExternalResource2.class,
+						TestExternalResource.PARAM_VALUE, TestExternalResource.EXPECTED_VALUE,
+						TestExternalResource2.PARAM_RESOURCE, createExternalResourceDescription(
+								TestExternalResource2.class,
+								TestExternalResource.PARAM_VALUE, TestExternalResource.EXPECTED_VALUE,
+								TestExternalResource2.PARAM_RESOURCE, createExternalResourceDescription(
+										TestExternalResource.class,
+										TestExternalResource.PARAM_VALUE,
+										TestExternalResource.EXPECTED_VALUE)))));
+
+		// The nested resources may be claimed by different threads. Each resource checks in
+		// afterResourcesInitialized() that the resources nested into it have been configured.
+		final ResourceManager resMgr = UIMAFramework.newDefaultResourceManager();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<AnalysisEngine>> engines = new ArrayList<Future<AnalysisEngine>>();
+			for (int i = 0; i < 16; i++) {
+				engines.add(executor.submit(new Callable<AnalysisEngine>() {
+					public AnalysisEngine call() throws Exception {
+						return UIMAFramework.produceAnalysisEngine(aeDesc, resMgr, null);
+					}
+				}));
+			}
+			for (Future<AnalysisEngine> ae : engines) {
+				ae.get().process(ae.get().newCAS());
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Test that a failure to initialize a nested resource is reported to all engines sharing it,
+	 * including those whose thread waited for another thread to initialize the resource.
+	 */
+	@Test
+	public void resource_testParallelNestingFailure() throws Exception {
+		final AnalysisEngineDescription aeDesc = saveLoad(createPrimitiveDescription(
+				TestAnalysisEngineWithResource.class,
+				TestAnalysisEngineWithResource.PARAM_RESOURCE,
+				createExternalResourceDescription(TestExternalResource2.class,
+						TestExternalResource.PARAM_VALUE, TestExternalResource.EXPECTED_VALUE,
+						TestExternalResource2.PARAM_RESOURCE, createExternalResourceDescription(
+								FailingExternalResource.class,
+								TestExternalResource.PARAM_VALUE,
+								TestExternalResource.EXPECTED_VALUE))));
+
+		final ResourceManager resMgr = UIMAFramework.newDefaultResourceManager();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<AnalysisEngine>> engines = new ArrayList<Future<AnalysisEngine>>();
+			for (int i = 0; i < 16; i++) {
+				engines.add(executor.submit(new Callable<AnalysisEngine>() {
+					public AnalysisEngine call() throws Exception {
+						return UIMAFramework.produceAnalysisEngine(aeDesc, resMgr, null);
+					}
+				}));
+			}
+			for (Future<AnalysisEngine> ae : engines) {
+				try {
+					ae.get();
+					fail("Engine must not be usable if its resources failed to initialize");
+				}
+				catch (ExecutionException e) {
+					// Expected
+				}
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	public static class FailingExternalResource extends TestExternalResource {
+		@Override
+		public void afterResourcesInitialized() {
+			throw new IllegalStateException("broken");
+		}
+	}
+
 	public static class TestExternalResource2 extends TestExternalResource {
 		public final static String PARAM_RESOURCE = "resource2";
 		@ExternalResource(key = PARAM_RESOURCE)
@@ -308,6 +406,9 @@ public class AnalysisEngineFactoryExternalResourceTest {
 			assertNotNull(resource);
 			if (this != resource) {
 				resource.assertConfiguredOk();
+				if (resource instanceof TestExternalResource2) {
+					assertNotNull(((TestExternalResource2) resource).resource);
+				}
 			}
 			assertConfiguredOk();
 		}
@@ -498,4 +498,31 @@ public class AnalysisEngineFactoryTest extends ComponentTestBase {
 		AnalysisEngineFactory.createPrimitive(ParameterizedAE.class, typeSystemDescription);
 	}
 
+	@Test
+	public void testReflectedMetaDataIsCopied() throws ResourceInitializationException {
+		AnalysisEngineDescription desc1 = AnalysisEngineFactory.createPrimitiveDescription(
+				ParameterizedAE.class, typeSystemDescription);
+		String[] values = (String[]) desc1.getAnalysisEngineMetaData()
+				.getConfigurationParameterSettings()
+				.getParameterValue(ParameterizedAE.PARAM_STRING_2);
+		values[0] = "changed";
+		desc1.getAnalysisEngineMetaData().getConfigurationParameterDeclarations()
+				.getConfigurationParameter(null, ParameterizedAE.PARAM_STRING_2)
+				.setDescription("changed");
+		desc1.getAnalysisEngineMetaData().getOperationalProperties()
+				.setMultipleDeploymentAllowed(false);
+
+		// Modifying one description must not affect other descriptions of the same class
+		AnalysisEngineDescription desc2 = AnalysisEngineFactory.createPrimitiveDescription(
+				ParameterizedAE.class, typeSystemDescription);
+		assertArrayEquals(new String[] { "coconut", "mango" }, (String[]) desc2
+				.getAnalysisEngineMetaData().getConfigurationParameterSettings()
+				.getParameterValue(ParameterizedAE.PARAM_STRING_2));
+		assertFalse("changed".equals(desc2.getAnalysisEngineMetaData()
+				.getConfigurationParameterDeclarations()
+				.getConfigurationParameter(null, ParameterizedAE.PARAM_STRING_2)
+				.getDescription()));
+		assertTrue(desc2.getAnalysisEngineMetaData().getOperationalProperties()
+				.isMultipleDeploymentAllowed());
+	}
 }
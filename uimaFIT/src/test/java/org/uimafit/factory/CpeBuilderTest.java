@@ -0,0 +1,235 @@
+/*
+ Copyright 2012
+ Ubiquitous Knowledge Processing (UKP) Lab
+ Technische Universitaet Darmstadt
+ All rights reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.uimafit.factory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.uimafit.factory.AnalysisEngineFactory.createAggregateDescription;
+import static org.uimafit.factory.AnalysisEngineFactory.createPrimitiveDescription;
+import static org.uimafit.factory.CollectionReaderFactory.createDescription;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.metadata.FixedFlow;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.collection.CollectionProcessingEngine;
+import org.apache.uima.collection.EntityProcessStatus;
+import org.apache.uima.collection.StatusCallbackListener;
+import org.apache.uima.collection.metadata.CpeCasProcessor;
+import org.apache.uima.collection.metadata.CpeComponentDescriptor;
+import org.apache.uima.collection.metadata.CpeDescription;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.XMLInputSource;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.uimafit.component.JCasAnnotator_ImplBase;
+import org.uimafit.pipeline.SimplePipelineTest.MultiReader;
+
+/**
+ * @author Richard Eckart de Castilho
+ */
+public class CpeBuilderTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testCpeDescription() throws Exception {
+		Consumer.PROCESSED.set(0);
+
+		CpeBuilder builder = new CpeBuilder();
+		builder.setReader(createDescription(MultiReader.class, MultiReader.PARAM_SIZE, 5));
+		builder.setAnalysisEngine(createAggregateDescription(
+				createPrimitiveDescription(Tagger.class),
+				createPrimitiveDescription(Consumer.class)));
+
+		// The descriptions held in memory are written to files included by the description
+		CpeDescription desc = builder.getCpeDescription();
+		CpeComponentDescriptor reader = desc.getAllCollectionCollectionReaders()[0]
+				.getCollectionIterator().getDescriptor();
+		assertNull(reader.getImport());
+		assertNotNull(reader.getInclude().get());
+
+		CpeCasProcessor[] procs = desc.getCpeCasProcessors().getAllCpeCasProcessors();
+		assertEquals(2, procs.length);
+		for (CpeCasProcessor proc : procs) {
+			assertNull(proc.getCpeComponentDescriptor().getImport());
+			assertNotNull(proc.getCpeComponentDescriptor().getInclude().get());
+		}
+
+		// So the description can be saved and used to create a CPE without the builder
+		File file = folder.newFile("cpe.xml");
+		OutputStream out = new FileOutputStream(file);
+		try {
+			desc.toXML(out);
+		}
+		finally {
+			out.close();
+		}
+		CpeDescription loaded = UIMAFramework.getXMLParser().parseCpeDescription(
+				new XMLInputSource(file));
+		CompletionListener listener = new CompletionListener();
+		CollectionProcessingEngine cpe = UIMAFramework.produceCollectionProcessingEngine(loaded);
+		cpe.addStatusCallbackListener(listener);
+		cpe.process();
+		listener.await();
+
+		assertEquals(5, Consumer.PROCESSED.get());
+	}
+
+	public static class Tagger extends JCasAnnotator_ImplBase {
+		public static final AtomicInteger INSTANCES = new AtomicInteger();
+
+		@Override
+		public void initialize(UimaContext context) throws ResourceInitializationException {
+			super.initialize(context);
+			INSTANCES.incrementAndGet();
+		}
+
+		@Override
+		public void process(JCas jCas) {
+			// Nothing to do
+		}
+	}
+
+	public static class Consumer extends JCasAnnotator_ImplBase {
+		public static final AtomicInteger INSTANCES = new AtomicInteger();
+		public static final AtomicInteger PROCESSED = new AtomicInteger();
+
+		@Override
+		public void initialize(UimaContext context) throws ResourceInitializationException {
+			super.initialize(context);
+			INSTANCES.incrementAndGet();
+		}
+
+		@Override
+		public void process(JCas jCas) {
+			PROCESSED.incrementAndGet();
+		}
+	}
+
+	@Test
+	public void testThreadCounts() throws Exception {
+		Tagger.INSTANCES.set(0);
+		Consumer.INSTANCES.set(0);
+		Consumer.PROCESSED.set(0);
+
+		AnalysisEngineDescription aae = createAggregateDescription(
+				createPrimitiveDescription(Tagger.class), createPrimitiveDescription(Consumer.class));
+		String[] keys = ((FixedFlow) aae.getAnalysisEngineMetaData().getFlowConstraints())
+				.getFixedFlow();
+
+		CpeBuilder builder = new CpeBuilder();
+		builder.setReader(createDescription(MultiReader.class, MultiReader.PARAM_SIZE, 20));
+		builder.setAnalysisEngine(aae);
+		builder.setThreadCount(keys[0], 3);
+		builder.setThreadCount(keys[1], 1);
+		builder.setCasPoolSize(4);
+		builder.setBatchSize(5);
+		run(builder);
+
+		assertEquals(3, Tagger.INSTANCES.get());
+		assertEquals(1, Consumer.INSTANCES.get());
+		assertEquals(20, Consumer.PROCESSED.get());
+		assertEquals(3, builder.getCpeDescription().getCpeCasProcessors()
+				.getConcurrentPUCount());
+		assertEquals(4, builder.getCpeDescription().getCpeCasProcessors().getCasPoolSize());
+	}
+
+	@Test
+	public void testThreadCountsReuse() throws Exception {
+		AnalysisEngineDescription aae = createAggregateDescription(
+				createPrimitiveDescription(Tagger.class), createPrimitiveDescription(Consumer.class));
+		String[] keys = ((FixedFlow) aae.getAnalysisEngineMetaData().getFlowConstraints())
+				.getFixedFlow();
+
+		CpeBuilder builder = new CpeBuilder();
+		builder.setReader(createDescription(MultiReader.class, MultiReader.PARAM_SIZE, 20));
+		builder.setAnalysisEngine(aae);
+		builder.setThreadCount(keys[0], 3);
+		builder.setThreadCount(keys[1], 1);
+		run(builder);
+
+		CpeCasProcessor consumer = builder.getCpeDescription().getCpeCasProcessors()
+				.getAllCpeCasProcessors()[1];
+		CpeComponentDescriptor ccd = consumer.getCpeComponentDescriptor();
+
+		// The single-instance descriptor created for the first CPE is reused by the second one
+		Consumer.INSTANCES.set(0);
+		Consumer.PROCESSED.set(0);
+		run(builder);
+		assertSame(ccd, consumer.getCpeComponentDescriptor());
+		assertEquals(1, Consumer.INSTANCES.get());
+		assertEquals(20, Consumer.PROCESSED.get());
+	}
+
+	private void run(CpeBuilder aBuilder) throws Exception {
+		CompletionListener listener = new CompletionListener();
+		aBuilder.createCpe(listener).process();
+		listener.await();
+	}
+
+	private static class CompletionListener implements StatusCallbackListener {
+		private boolean done;
+
+		public void entityProcessComplete(CAS aCas, EntityProcessStatus aStatus) {
+			// Nothing to do
+		}
+
+		public void initializationComplete() {
+			// Nothing to do
+		}
+
+		public void batchProcessComplete() {
+			// Nothing to do
+		}
+
+		public synchronized void collectionProcessComplete() {
+			done = true;
+			notifyAll();
+		}
+
+		public void paused() {
+			// Nothing to do
+		}
+
+		public void resumed() {
+			// Nothing to do
+		}
+
+		public void aborted() {
+			collectionProcessComplete();
+		}
+
+		public synchronized void await() throws InterruptedException {
+			while (!done) {
+				wait();
+			}
+		}
+	}
+}
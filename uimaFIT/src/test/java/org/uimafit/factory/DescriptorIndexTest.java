@@ -0,0 +1,92 @@
+/*
+ Copyright 2012
+ Ubiquitous Knowledge Processing (UKP) Lab
+ Technische Universitaet Darmstadt
+ All rights reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.uimafit.factory;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.uimafit.factory.TypeSystemDescriptionFactory.resolve;
+import static org.uimafit.factory.TypeSystemDescriptionFactory.scanImportsAndManifests;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashSet;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Richard Eckart de Castilho
+ */
+public class DescriptorIndexTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testIndexMatchesScan() throws Exception {
+		File dir = folder.newFolder("index");
+		DescriptorIndex.write(dir);
+		ClassLoader cl = new URLClassLoader(new URL[] { dir.toURI().toURL() }, getClass()
+				.getClassLoader());
+
+		assertEquals(
+				new HashSet<String>(asList(resolve(scanImportsAndManifests(
+						TypeSystemDescriptionFactory.TYPE_MANIFEST_PATTERN,
+						TypeSystemDescriptionFactory.TYPE_IMPORT_PATTERN)))),
+				new HashSet<String>(asList(DescriptorIndex.getLocations(cl,
+						DescriptorIndex.TYPES))));
+		assertEquals(
+				new HashSet<String>(asList(resolve(scanImportsAndManifests(
+						FsIndexFactory.FS_INDEX_MANIFEST_PATTERN,
+						FsIndexFactory.FS_INDEX_IMPORT_PATTERN)))),
+				new HashSet<String>(asList(DescriptorIndex.getLocations(cl,
+						DescriptorIndex.FS_INDEXES))));
+	}
+
+	@Test
+	public void testOutdatedIndexIgnored() throws Exception {
+		File dir = folder.newFolder("outdated");
+		File index = DescriptorIndex.write(dir);
+		FileUtils.writeStringToFile(index, FileUtils.readFileToString(index, "UTF-8")
+				+ "types * org/uimafit/type/Missing.xml\n", "UTF-8");
+		ClassLoader cl = new URLClassLoader(new URL[] { dir.toURI().toURL() }, getClass()
+				.getClassLoader());
+
+		assertNull(DescriptorIndex.getLocations(cl, DescriptorIndex.TYPES));
+	}
+
+	@Test
+	public void testAddedManifestIgnored() throws Exception {
+		File dir = folder.newFolder("index");
+		DescriptorIndex.write(dir);
+
+		// A library contributing further types is added to the class path
+		File lib = folder.newFolder("lib");
+		FileUtils.writeStringToFile(new File(lib, "META-INF/org.uimafit/types.txt"),
+				"classpath*:org/example/types/*.xml\n", "UTF-8");
+		ClassLoader cl = new URLClassLoader(new URL[] { dir.toURI().toURL(),
+				lib.toURI().toURL() }, getClass().getClassLoader());
+
+		assertNull(DescriptorIndex.getLocations(cl, DescriptorIndex.TYPES));
+		assertNull(DescriptorIndex.getLocations(cl, DescriptorIndex.FS_INDEXES));
+	}
+}
@@ -46,6 +46,16 @@ public class ExternalResourceConfiguratorTest extends ComponentTestBase {
 		verify(deps);
 	}
 
+	@Test
+	public void testAnalyzeRepeatedly() throws Exception {
+		// The declarations are built from cached fields, but each call must return new objects
+		Map<String, ExternalResourceDependency> deps1 = getResourceDeclarations(ParameterizedAE2.class);
+		deps1.get(ParameterizedAE2.RES_OPTIONAL).setOptional(false);
+		deps1.remove(ParameterizedAE2.RES_OTHER);
+
+		verify(getResourceDeclarations(ParameterizedAE2.class));
+	}
+
 	@Test
 	public void testDescriptor() throws Exception {
 		AnalysisEngineDescription desc = createPrimitiveDescription(ParameterizedAE2.class,
@@ -16,10 +16,20 @@
  */
 package org.uimafit.factory;
 
+import static org.uimafit.factory.TypeSystemDescriptionFactory.TYPE_CACHE_DIRECTORY;
 import static org.uimafit.factory.TypeSystemDescriptionFactory.createTypeSystemDescription;
+import static org.uimafit.factory.TypeSystemDescriptionFactory.fingerprint;
+import static org.uimafit.factory.TypeSystemDescriptionFactory.forceTypeDescriptorsScan;
+import static org.uimafit.factory.TypeSystemDescriptionFactory.scanTypeDescriptors;
 
+import java.io.File;
+import java.net.URL;
+
+import org.apache.commons.io.FileUtils;
 import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.uimafit.type.AnalyzedText;
 import org.uimafit.type.Sentence;
 import org.uimafit.type.Token;
@@ -30,6 +40,9 @@ import static org.junit.Assert.*;
  * @author Richard Eckart de Castilho
  */
 public class TypeSystemDescriptionFactoryTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	@Test
 	public void testFromPath() throws Exception {
 		TypeSystemDescriptionFactory.createTypeSystemDescriptionFromPath(
@@ -45,4 +58,83 @@ public class TypeSystemDescriptionFactoryTest {
 		assertNotNull(tsd.getType(Sentence.class.getName()));
 		assertNotNull(tsd.getType(AnalyzedText.class.getName()));
 	}
+
+	@Test
+	public void testScanningReturnsCopies() throws Exception {
+		TypeSystemDescription tsd1 = createTypeSystemDescription();
+		tsd1.addType("test.Added", "", "uima.tcas.Annotation");
+
+		TypeSystemDescription tsd2 = createTypeSystemDescription();
+		assertNull(tsd2.getType("test.Added"));
+		assertNotNull(tsd2.getType(Token.class.getName()));
+	}
+
+	@Test
+	public void testFingerprint() throws Exception {
+		File desc1 = folder.newFile("a.xml");
+		File desc2 = folder.newFile("b.xml");
+		File jar = folder.newFile("c.jar");
+		String loc1 = desc1.toURI().toURL().toString();
+		String loc2 = desc2.toURI().toURL().toString();
+		String loc3 = "jar:" + jar.toURI().toURL() + "!/types/c.xml";
+
+		String fp = fingerprint(new String[] { loc1, loc2, loc3 });
+		assertNotNull(fp);
+		assertEquals(fp, fingerprint(new String[] { loc3, loc2, loc1 }));
+		assertFalse(fp.equals(fingerprint(new String[] { loc1, loc2 })));
+
+		FileUtils.writeStringToFile(desc2, "changed");
+		String fp2 = fingerprint(new String[] { loc1, loc2, loc3 });
+		assertFalse(fp.equals(fp2));
+
+		// Changes to a JAR containing a descriptor are noticed as well
+		FileUtils.writeStringToFile(jar, "changed");
+		assertFalse(fp2.equals(fingerprint(new String[] { loc1, loc2, loc3 })));
+	}
+
+	@Test
+	public void testDiskCache() throws Exception {
+		File cacheDir = folder.newFolder("cache");
+		System.setProperty(TYPE_CACHE_DIRECTORY, cacheDir.getPath());
+		File descriptor = null;
+		long modified = 0;
+		try {
+			forceTypeDescriptorsScan();
+			createTypeSystemDescription();
+			File[] cached = cacheDir.listFiles();
+			assertEquals(1, cached.length);
+
+			// Mark the cached type system to see that it is used
+			String xml = FileUtils.readFileToString(cached[0], "UTF-8");
+			FileUtils.writeStringToFile(cached[0], xml.replace(Token.class.getName(),
+					"test.CachedToken"), "UTF-8");
+
+			forceTypeDescriptorsScan();
+			TypeSystemDescription tsd = createTypeSystemDescription();
+			assertNotNull(tsd.getType("test.CachedToken"));
+
+			// Touching one of the descriptors invalidates the cache
+			for (String location : scanTypeDescriptors()) {
+				if (location.endsWith("Token.xml") && location.startsWith("file:")) {
+					descriptor = new File(new URL(location).toURI());
+				}
+			}
+			assertNotNull(descriptor);
+			modified = descriptor.lastModified();
+			assertTrue(descriptor.setLastModified(modified + 2000));
+
+			forceTypeDescriptorsScan();
+			tsd = createTypeSystemDescription();
+			assertNull(tsd.getType("test.CachedToken"));
+			assertNotNull(tsd.getType(Token.class.getName()));
+			assertEquals(2, cacheDir.listFiles().length);
+		}
+		finally {
+			if (descriptor != null) {
+				descriptor.setLastModified(modified);
+			}
+			System.clearProperty(TYPE_CACHE_DIRECTORY);
+			forceTypeDescriptorsScan();
+		}
+	}
 }
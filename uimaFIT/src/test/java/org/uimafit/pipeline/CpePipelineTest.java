@@ -20,13 +20,22 @@ package org.uimafit.pipeline;
 
 import static org.uimafit.pipeline.SimplePipelineTest.SENTENCE_TEXT;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import junit.framework.Assert;
 
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.uimafit.factory.AnalysisEngineFactory;
 import org.uimafit.factory.CollectionReaderFactory;
+import org.uimafit.factory.CpeBuilder;
+import org.uimafit.pipeline.SimplePipelineTest.FailingAnnotator;
+import org.uimafit.pipeline.SimplePipelineTest.MultiReader;
 import org.uimafit.pipeline.SimplePipelineTest.Annotator;
 import org.uimafit.pipeline.SimplePipelineTest.Reader;
 import org.uimafit.pipeline.SimplePipelineTest.Writer;
@@ -35,6 +44,9 @@ import org.uimafit.pipeline.SimplePipelineTest.Writer;
  * @author Richard Eckart de Castilho
  */
 public class CpePipelineTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	@Test
 	public void test() throws Exception {
 		CpePipeline.runPipeline(
@@ -43,4 +55,96 @@ public class CpePipelineTest {
 				AnalysisEngineFactory.createPrimitiveDescription(Writer.class));
 		Assert.assertEquals(Arrays.asList(SENTENCE_TEXT), Writer.SENTENCES);
 	}
+
+	@Test
+	public void testResult() throws Exception {
+		CpeBuilder builder = new CpeBuilder();
+		builder.setReader(CollectionReaderFactory.createDescription(MultiReader.class,
+				MultiReader.PARAM_SIZE, 10));
+		builder.setAnalysisEngine(AnalysisEngineFactory.createAggregateDescription(
+				AnalysisEngineFactory.createPrimitiveDescription(Annotator.class),
+				AnalysisEngineFactory.createPrimitiveDescription(Writer.class)));
+
+		final List<CpePipelineResult> reports = new ArrayList<CpePipelineResult>();
+		CpePipelineResult result = CpePipeline.runPipeline(builder, new CpeProgressListener() {
+			public void progress(CpePipelineResult aProgress) {
+				reports.add(aProgress);
+			}
+		}, 0);
+
+		Assert.assertEquals(10, result.getProcessedCount());
+		Assert.assertEquals(0, result.getFailedCount());
+		Assert.assertTrue(result.isComplete());
+		Assert.assertFalse(result.isAborted());
+		Assert.assertNotNull(result.getPerformanceReport());
+		Assert.assertEquals(2, result.getStatistics().getTimings().size());
+		Assert.assertEquals(10, Writer.SENTENCES.size());
+		// Without an interval, progress is only reported at the end
+		Assert.assertEquals(Arrays.asList(result), reports);
+	}
+
+	@Test
+	public void testResultFailure() throws Exception {
+		CpeBuilder builder = new CpeBuilder();
+		builder.setReader(CollectionReaderFactory.createDescription(MultiReader.class,
+				MultiReader.PARAM_SIZE, 10));
+		builder.setAnalysisEngine(AnalysisEngineFactory
+				.createPrimitiveDescription(FailingAnnotator.class));
+
+		CpePipelineResult result = CpePipeline.runPipeline(builder, null, 0);
+
+		Assert.assertEquals(1, result.getFailedCount());
+		Assert.assertFalse(result.getExceptions().isEmpty());
+		Assert.assertTrue(result.isComplete());
+	}
+
+	@Test
+	public void testSkipFailures() throws Exception {
+		File deadLetters = new File(folder.getRoot(), "failed");
+
+		CpeBuilder builder = new CpeBuilder();
+		builder.setReader(CollectionReaderFactory.createDescription(MultiReader.class,
+				MultiReader.PARAM_SIZE, 10));
+		builder.setAnalysisEngine(AnalysisEngineFactory
+				.createPrimitiveDescription(FailingAnnotator.class));
+		builder.setErrorThreshold(5, 0, CpeBuilder.ACTION_TERMINATE);
+		builder.setSkipFailedDocuments(true);
+		builder.setDeadLetterDirectory(deadLetters);
+
+		CpePipelineResult result = CpePipeline.runPipeline(builder, null, 0);
+
+		Assert.assertEquals(9, result.getProcessedCount());
+		Assert.assertEquals(1, result.getFailedCount());
+		Assert.assertFalse(result.isAborted());
+		Assert.assertTrue(result.isComplete());
+
+		Assert.assertTrue(FileUtils.readFileToString(new File(deadLetters, "failed-0.xmi"),
+				"UTF-8").contains(SENTENCE_TEXT + " 7"));
+		Assert.assertTrue(new File(deadLetters, "failed-0.txt").length() > 0);
+		Assert.assertEquals(2, deadLetters.list().length);
+	}
+
+	@Test
+	public void testRepeatFailures() throws Exception {
+		File deadLetters = new File(folder.getRoot(), "failed");
+
+		CpeBuilder builder = new CpeBuilder();
+		builder.setReader(CollectionReaderFactory.createDescription(MultiReader.class,
+				MultiReader.PARAM_SIZE, 10));
+		builder.setAnalysisEngine(AnalysisEngineFactory
+				.createPrimitiveDescription(FailingAnnotator.class));
+		builder.setErrorThreshold(5, 0, CpeBuilder.ACTION_TERMINATE);
+		builder.setDeadLetterDirectory(deadLetters);
+
+		CpePipelineResult result = CpePipeline.runPipeline(builder, null, 0);
+
+		// The failed document is processed again until the error threshold is exceeded
+		Assert.assertEquals(7, result.getProcessedCount());
+		Assert.assertEquals(6, result.getFailedCount());
+		Assert.assertTrue(result.isAborted());
+		for (int i = 0; i < 6; i++) {
+			Assert.assertTrue(FileUtils.readFileToString(new File(deadLetters, "failed-" + i
+					+ ".xmi"), "UTF-8").contains(SENTENCE_TEXT + " 7"));
+		}
+	}
 }
@@ -0,0 +1,127 @@
+/*
+ Copyright 2012
+ Ubiquitous Knowledge Processing (UKP) Lab
+ Technische Universitaet Darmstadt
+ All rights reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.uimafit.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.uimafit.factory.AnalysisEngineFactory.createPrimitive;
+import static org.uimafit.factory.CollectionReaderFactory.createCollectionReader;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.collection.CollectionException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.util.Progress;
+import org.junit.Test;
+import org.uimafit.component.JCasAnnotator_ImplBase;
+import org.uimafit.component.JCasCollectionReader_ImplBase;
+import org.uimafit.pipeline.SimplePipelineTest.Annotator;
+import org.uimafit.pipeline.SimplePipelineTest.MultiReader;
+
+/**
+ * @author Richard Eckart de Castilho
+ */
+public class PipelineStagesTest {
+	public static class SlowAnnotator extends JCasAnnotator_ImplBase {
+		static final AtomicInteger ACTIVE = new AtomicInteger();
+
+		static final AtomicInteger DONE = new AtomicInteger();
+
+		@Override
+		public void process(JCas aJCas) throws AnalysisEngineProcessException {
+			ACTIVE.incrementAndGet();
+			try {
+				// Busy wait, ignoring interrupts like a long-running computation would
+				long end = System.currentTimeMillis() + 20;
+				while (System.currentTimeMillis() < end) {
+					Thread.yield();
+				}
+			}
+			finally {
+				ACTIVE.decrementAndGet();
+				DONE.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Records the maximum number of documents read but not yet processed by the
+	 * {@link SlowAnnotator}.
+	 */
+	public static class InFlightReader extends JCasCollectionReader_ImplBase {
+		static final AtomicInteger MAX_IN_FLIGHT = new AtomicInteger();
+
+		private int current = 0;
+
+		public Progress[] getProgress() {
+			return null;
+		}
+
+		public boolean hasNext() throws IOException, CollectionException {
+			return current < 20;
+		}
+
+		@Override
+		public void getNext(JCas jCas) throws IOException, CollectionException {
+			current++;
+			int inFlight = current - SlowAnnotator.DONE.get();
+			if (inFlight > MAX_IN_FLIGHT.get()) {
+				MAX_IN_FLIGHT.set(inFlight);
+			}
+			jCas.setDocumentText(Integer.toString(current));
+		}
+	}
+
+	@Test
+	public void testCapacity() throws Exception {
+		SlowAnnotator.DONE.set(0);
+		InFlightReader.MAX_IN_FLIGHT.set(0);
+		SimplePipeline.runPipelineStaged(createCollectionReader(InFlightReader.class), 3,
+				createPrimitive(Annotator.class), createPrimitive(SlowAnnotator.class));
+
+		assertEquals(20, SlowAnnotator.DONE.get());
+		// The capacity is the total number of CASes in the pipeline, including the one being read
+		assertTrue("Too many documents in the pipeline: " + InFlightReader.MAX_IN_FLIGHT.get(),
+				InFlightReader.MAX_IN_FLIGHT.get() <= 3);
+	}
+
+	@Test
+	public void testCloseWaitsForStages() throws Exception {
+		AnalysisEngine engine = createPrimitive(SlowAnnotator.class);
+		PipelineStages stages = new PipelineStages(new PrefetchingReader(createCollectionReader(
+				MultiReader.class, MultiReader.PARAM_SIZE, 20), 2, engine.getMetaData()), engine);
+
+		CAS cas = stages.take();
+		stages.release(cas);
+		// Wait until the stage is busy with the next document
+		while (SlowAnnotator.ACTIVE.get() == 0) {
+			Thread.yield();
+		}
+		stages.close();
+
+		// No engine may still be running after close, otherwise it could be destroyed mid-process
+		assertEquals(0, SlowAnnotator.ACTIVE.get());
+		assertNull(stages.take());
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ Copyright 2012
+ Ubiquitous Knowledge Processing (UKP) Lab
+ Technische Universitaet Darmstadt
+ All rights reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.uimafit.pipeline;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.uimafit.factory.AnalysisEngineFactory.createPrimitive;
+import static org.uimafit.factory.AnalysisEngineFactory.createPrimitiveDescription;
+import static org.uimafit.factory.CollectionReaderFactory.createCollectionReader;
+import static org.uimafit.factory.CollectionReaderFactory.createDescription;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+import org.junit.Test;
+import org.uimafit.pipeline.PipelineStatistics.Histogram;
+import org.uimafit.pipeline.SimplePipelineTest.Annotator;
+import org.uimafit.pipeline.SimplePipelineTest.MultiReader;
+import org.uimafit.pipeline.SimplePipelineTest.Writer;
+
+/**
+ * @author Richard Eckart de Castilho
+ */
+public class PipelineStatisticsTest {
+	@Test
+	public void testSimplePipeline() throws Exception {
+		PipelineStatistics stats = new PipelineStatistics();
+		SimplePipeline.runPipeline(createCollectionReader(MultiReader.class,
+				MultiReader.PARAM_SIZE, 10), stats, createPrimitive(Annotator.class),
+				createPrimitive(Annotator.class), createPrimitive(Writer.class));
+
+		assertEquals(10, stats.getDocumentCount());
+		assertTrue(stats.getDocumentsPerSecond() > 0);
+
+		// Reader and engines in order, duplicate names are made unique
+		Map<String, Histogram> timings = stats.getTimings();
+		assertEquals(asList(PipelineStatistics.READER, Annotator.class.getName(),
+				Annotator.class.getName() + "-1", Writer.class.getName()), new ArrayList<String>(
+				timings.keySet()));
+		for (Histogram h : timings.values()) {
+			assertEquals(10, h.getCount());
+		}
+
+		// The document annotation and two sentences per document
+		assertEquals(3, stats.getFeatureStructureCounts().getMax());
+		assertEquals((SimplePipelineTest.SENTENCE_TEXT + " 9").length(), stats.getTextLengths()
+				.getMax());
+
+		String report = stats.getReport();
+		assertTrue(report.contains("Documents: 10"));
+		assertTrue(report.contains(Writer.class.getName()));
+	}
+
+	@Test
+	public void testCpePipeline() throws Exception {
+		PipelineStatistics stats = new PipelineStatistics();
+		CpePipeline.runPipeline(createDescription(MultiReader.class, MultiReader.PARAM_SIZE, 5),
+				stats, createPrimitiveDescription(Annotator.class),
+				createPrimitiveDescription(Writer.class));
+
+		assertEquals(5, stats.getDocumentCount());
+		assertEquals(2, stats.getTimings().size());
+		for (Histogram h : stats.getTimings().values()) {
+			assertEquals(5, h.getCount());
+		}
+	}
+
+	@Test
+	public void testHistogram() {
+		Histogram h = new Histogram();
+		for (int i = 1; i <= 100; i++) {
+			h.add(i);
+		}
+		assertEquals(100, h.getCount());
+		assertEquals(5050, h.getTotal());
+		assertEquals(1, h.getMin());
+		assertEquals(100, h.getMax());
+		assertEquals(50.5, h.getMean(), 0.0001);
+		// 50 falls into the bucket [32, 63]
+		assertEquals(63, h.getPercentile(0.5));
+		assertEquals(100, h.getPercentile(1.0));
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ Copyright 2012
+ Ubiquitous Knowledge Processing (UKP) Lab
+ Technische Universitaet Darmstadt
+ All rights reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.uimafit.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.uimafit.factory.AnalysisEngineFactory.createPrimitive;
+import static org.uimafit.factory.CollectionReaderFactory.createCollectionReader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.jcas.JCas;
+import org.junit.Test;
+import org.uimafit.pipeline.PooledJCasIterable.Lease;
+import org.uimafit.pipeline.SimplePipelineTest.Annotator;
+import org.uimafit.pipeline.SimplePipelineTest.MultiReader;
+import org.uimafit.type.Sentence;
+import org.uimafit.util.JCasUtil;
+
+/**
+ * @author Richard Eckart de Castilho
+ */
+public class PooledJCasIterableTest {
+	@Test
+	public void testLeases() throws Exception {
+		PooledJCasIterable iterable = new PooledJCasIterable(4, createCollectionReader(
+				MultiReader.class, MultiReader.PARAM_SIZE, 20), createPrimitive(Annotator.class));
+
+		List<Lease> held = new ArrayList<Lease>();
+		List<String> texts = new ArrayList<String>();
+		for (Lease lease : iterable) {
+			held.add(lease);
+			// Leased documents stay valid while further documents are processed
+			if (held.size() == 3) {
+				for (Lease h : held) {
+					texts.add(JCasUtil.selectSingle(h.getJCas(), Sentence.class).getCoveredText());
+					h.release();
+				}
+				held.clear();
+			}
+		}
+		for (Lease h : held) {
+			texts.add(JCasUtil.selectSingle(h.getJCas(), Sentence.class).getCoveredText());
+			h.release();
+		}
+
+		assertEquals(20, texts.size());
+		for (int i = 0; i < texts.size(); i++) {
+			assertEquals(SimplePipelineTest.SENTENCE_TEXT + " " + i, texts.get(i));
+		}
+		assertFalse(iterable.hasNext());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testReleased() throws Exception {
+		PooledJCasIterable iterable = new PooledJCasIterable(2, createCollectionReader(
+				MultiReader.class, MultiReader.PARAM_SIZE, 5));
+		try {
+			Lease lease = iterable.next();
+			lease.release();
+			lease.release();
+			lease.getJCas();
+		}
+		finally {
+			iterable.close();
+		}
+	}
+
+	@Test
+	public void testSingleCas() throws Exception {
+		List<String> texts = new ArrayList<String>();
+		for (Lease lease : new PooledJCasIterable(1, createCollectionReader(MultiReader.class,
+				MultiReader.PARAM_SIZE, 5), createPrimitive(Annotator.class))) {
+			texts.add(JCasUtil.selectSingle(lease.getJCas(), Sentence.class).getCoveredText());
+			lease.release();
+		}
+
+		assertEquals(5, texts.size());
+		assertEquals(SimplePipelineTest.SENTENCE_TEXT + " 4", texts.get(4));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEmptyPool() throws Exception {
+		new PooledJCasIterable(0, createCollectionReader(MultiReader.class, MultiReader.PARAM_SIZE,
+				5));
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ Copyright 2012
+ Ubiquitous Knowledge Processing (UKP) Lab
+ Technische Universitaet Darmstadt
+ All rights reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.uimafit.pipeline;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.uimafit.factory.AnalysisEngineFactory.createPrimitive;
+import static org.uimafit.factory.CollectionReaderFactory.createCollectionReader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.collection.CollectionException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.util.Progress;
+import org.junit.Test;
+import org.uimafit.component.JCasCollectionReader_ImplBase;
+import org.uimafit.pipeline.SimplePipelineTest.Annotator;
+import org.uimafit.pipeline.SimplePipelineTest.CountingWriter;
+import org.uimafit.pipeline.SimplePipelineTest.MultiReader;
+import org.uimafit.type.Sentence;
+import org.uimafit.util.JCasUtil;
+
+/**
+ * @author Richard Eckart de Castilho
+ */
+public class PrefetchingReaderTest {
+	public static class FailingReader extends JCasCollectionReader_ImplBase {
+		private int current = 0;
+
+		public Progress[] getProgress() {
+			return null;
+		}
+
+		public boolean hasNext() throws IOException, CollectionException {
+			return true;
+		}
+
+		@Override
+		public void getNext(JCas jCas) throws IOException, CollectionException {
+			if (current == 3) {
+				throw new IOException("broken");
+			}
+			jCas.setDocumentText(Integer.toString(current++));
+		}
+	}
+
+	@Test
+	public void testOrderAndBackPressure() throws Exception {
+		PrefetchingReader prefetcher = new PrefetchingReader(createCollectionReader(
+				MultiReader.class, MultiReader.PARAM_SIZE, 20), 2);
+
+		List<String> texts = new ArrayList<String>();
+		List<CAS> held = new ArrayList<CAS>();
+		while (prefetcher.hasNext()) {
+			CAS cas = prefetcher.next();
+			texts.add(cas.getDocumentText());
+			// Hold on to two CASes at a time, the reader has to wait until they are released
+			held.add(cas);
+			if (held.size() == 2) {
+				prefetcher.release(held.remove(0));
+			}
+		}
+		prefetcher.close();
+		assertNoPrefetchingThreads();
+
+		assertEquals(20, texts.size());
+		for (int i = 0; i < texts.size(); i++) {
+			assertEquals(SimplePipelineTest.SENTENCE_TEXT + " " + i, texts.get(i));
+		}
+	}
+
+	@Test
+	public void testNoPrefetch() throws Exception {
+		PrefetchingReader prefetcher = new PrefetchingReader(createCollectionReader(
+				MultiReader.class, MultiReader.PARAM_SIZE, 5), 0);
+
+		List<String> texts = new ArrayList<String>();
+		CAS first = null;
+		while (prefetcher.hasNext()) {
+			CAS cas = prefetcher.next();
+			// Without prefetching there is only a single CAS which is reused for every document
+			if (first == null) {
+				first = cas;
+			}
+			assertSame(first, cas);
+			texts.add(cas.getDocumentText());
+			prefetcher.release(cas);
+		}
+		prefetcher.close();
+		assertNoPrefetchingThreads();
+
+		assertEquals(5, texts.size());
+		assertEquals(SimplePipelineTest.SENTENCE_TEXT + " 4", texts.get(4));
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		PrefetchingReader prefetcher = new PrefetchingReader(
+				createCollectionReader(FailingReader.class), 2);
+
+		List<String> texts = new ArrayList<String>();
+		try {
+			while (prefetcher.hasNext()) {
+				CAS cas = prefetcher.next();
+				texts.add(cas.getDocumentText());
+				prefetcher.release(cas);
+			}
+			fail("Expected the reader failure to be propagated");
+		}
+		catch (IOException e) {
+			assertEquals("broken", e.getMessage());
+		}
+
+		// All documents read before the failure are delivered
+		assertEquals(3, texts.size());
+		assertFalse(prefetcher.hasNext());
+		prefetcher.close();
+		assertNoPrefetchingThreads();
+	}
+
+	@Test
+	public void testRunPipelinePrefetching() throws Exception {
+		CountingWriter.reset();
+		SimplePipeline.runPipelinePrefetching(createCollectionReader(MultiReader.class,
+				MultiReader.PARAM_SIZE, 10), 3, createPrimitive(Annotator.class),
+				createPrimitive(CountingWriter.class));
+
+		assertEquals(10, CountingWriter.SENTENCES.size());
+		assertEquals(SimplePipelineTest.SENTENCE_TEXT + " 9", CountingWriter.SENTENCES.get(9));
+		assertEquals(1, CountingWriter.COMPLETED.get());
+	}
+
+	@Test
+	public void testJCasIterablePrefetching() throws Exception {
+		List<String> texts = new ArrayList<String>();
+		for (JCas jcas : new JCasIterable(3, createCollectionReader(MultiReader.class,
+				MultiReader.PARAM_SIZE, 10), createPrimitive(Annotator.class))) {
+			texts.add(JCasUtil.selectSingle(jcas, Sentence.class).getCoveredText());
+		}
+
+		assertEquals(10, texts.size());
+		assertEquals(SimplePipelineTest.SENTENCE_TEXT + " 0", texts.get(0));
+		assertEquals(SimplePipelineTest.SENTENCE_TEXT + " 9", texts.get(9));
+		// Exhausting the iterable stops the background thread
+		assertNoPrefetchingThreads();
+	}
+
+	@Test
+	public void testJCasIterablePrefetchingFailure() throws Exception {
+		List<String> texts = new ArrayList<String>();
+		try {
+			for (JCas jcas : new JCasIterable(2, createCollectionReader(FailingReader.class))) {
+				texts.add(jcas.getDocumentText());
+			}
+			fail("Expected the reader failure to be propagated");
+		}
+		catch (IllegalStateException e) {
+			assertEquals("broken", e.getCause().getMessage());
+		}
+
+		assertEquals(3, texts.size());
+		assertNoPrefetchingThreads();
+	}
+
+	private static void assertNoPrefetchingThreads() {
+		for (Thread t : Thread.getAllStackTraces().keySet()) {
+			if (t.getName().startsWith("PrefetchingReader-")) {
+				fail("Prefetching thread still running: " + t.getName());
+			}
+		}
+	}
+}
@@ -19,7 +19,9 @@ package org.uimafit.pipeline;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.Assert;
 
@@ -32,6 +34,8 @@ import org.apache.uima.util.Progress;
 import org.junit.Test;
 import org.uimafit.component.JCasAnnotator_ImplBase;
 import org.uimafit.component.JCasCollectionReader_ImplBase;
+import org.uimafit.descriptor.ConfigurationParameter;
+import org.uimafit.descriptor.OperationalProperties;
 import org.uimafit.factory.AnalysisEngineFactory;
 import org.uimafit.factory.CollectionReaderFactory;
 import org.uimafit.type.Sentence;
@@ -95,6 +99,139 @@ public class SimplePipelineTest {
 
 	}
 
+	public static class MultiReader extends JCasCollectionReader_ImplBase {
+		public static final String PARAM_SIZE = "size";
+		@ConfigurationParameter(name = PARAM_SIZE, mandatory = true)
+		private int size;
+
+		private int current = 0;
+
+		public Progress[] getProgress() {
+			return null;
+		}
+
+		public boolean hasNext() throws IOException, CollectionException {
+			return this.current < this.size;
+		}
+
+		@Override
+		public void getNext(JCas jCas) throws IOException, CollectionException {
+			jCas.setDocumentText(SENTENCE_TEXT + " " + this.current);
+			this.current += 1;
+		}
+	}
+
+	public static class CountingWriter extends JCasAnnotator_ImplBase {
+		public static final List<String> SENTENCES = Collections
+				.synchronizedList(new ArrayList<String>());
+		public static final AtomicInteger INSTANCES = new AtomicInteger();
+		public static final AtomicInteger COMPLETED = new AtomicInteger();
+
+		@Override
+		public void initialize(UimaContext context) throws ResourceInitializationException {
+			super.initialize(context);
+			INSTANCES.incrementAndGet();
+		}
+
+		@Override
+		public void process(JCas jCas) throws AnalysisEngineProcessException {
+			for (Sentence sentence : JCasUtil.select(jCas, Sentence.class)) {
+				SENTENCES.add(sentence.getCoveredText());
+			}
+		}
+
+		@Override
+		public void collectionProcessComplete() throws AnalysisEngineProcessException {
+			COMPLETED.incrementAndGet();
+		}
+
+		public static void reset() {
+			SENTENCES.clear();
+			INSTANCES.set(0);
+			COMPLETED.set(0);
+		}
+	}
+
+	@OperationalProperties(multipleDeploymentAllowed = false)
+	public static class SingletonAnnotator extends Annotator {
+		// Inherit processing, but do not allow replication
+	}
+
+	public static class FailingAnnotator extends JCasAnnotator_ImplBase {
+		@Override
+		public void process(JCas jCas) throws AnalysisEngineProcessException {
+			if (jCas.getDocumentText().endsWith(" 7")) {
+				throw new AnalysisEngineProcessException(new IllegalArgumentException("boom"));
+			}
+		}
+	}
+
+	@Test
+	public void testParallel() throws Exception {
+		CountingWriter.reset();
+		SimplePipeline.runPipelineParallel(CollectionReaderFactory.createDescription(
+				MultiReader.class, MultiReader.PARAM_SIZE, 100), 4,
+				AnalysisEngineFactory.createPrimitiveDescription(Annotator.class),
+				AnalysisEngineFactory.createPrimitiveDescription(CountingWriter.class));
+
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 100; i++) {
+			expected.add(SENTENCE_TEXT + " " + i);
+		}
+		List<String> actual = new ArrayList<String>(CountingWriter.SENTENCES);
+		Collections.sort(expected);
+		Collections.sort(actual);
+		Assert.assertEquals(expected, actual);
+		Assert.assertEquals(4, CountingWriter.INSTANCES.get());
+		Assert.assertEquals(4, CountingWriter.COMPLETED.get());
+	}
+
+	@Test
+	public void testParallelSingleDeployment() throws Exception {
+		CountingWriter.reset();
+		SimplePipeline.runPipelineParallel(CollectionReaderFactory.createDescription(
+				MultiReader.class, MultiReader.PARAM_SIZE, 10), 4,
+				AnalysisEngineFactory.createPrimitiveDescription(SingletonAnnotator.class),
+				AnalysisEngineFactory.createPrimitiveDescription(CountingWriter.class));
+
+		Assert.assertEquals(10, CountingWriter.SENTENCES.size());
+		Assert.assertEquals(1, CountingWriter.INSTANCES.get());
+		Assert.assertEquals(1, CountingWriter.COMPLETED.get());
+	}
+
+	@Test(expected = AnalysisEngineProcessException.class)
+	public void testParallelFailure() throws Exception {
+		SimplePipeline.runPipelineParallel(CollectionReaderFactory.createDescription(
+				MultiReader.class, MultiReader.PARAM_SIZE, 100), 4,
+				AnalysisEngineFactory.createPrimitiveDescription(FailingAnnotator.class));
+	}
+
+	@Test
+	public void testStaged() throws Exception {
+		CountingWriter.reset();
+		SimplePipeline.runPipelineStaged(CollectionReaderFactory.createCollectionReader(
+				MultiReader.class, MultiReader.PARAM_SIZE, 50), 4,
+				AnalysisEngineFactory.createPrimitive(Annotator.class),
+				AnalysisEngineFactory.createPrimitive(CountingWriter.class));
+
+		// Each stage runs on a single thread, so the order of the documents is preserved
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 50; i++) {
+			expected.add(SENTENCE_TEXT + " " + i);
+		}
+		Assert.assertEquals(expected, CountingWriter.SENTENCES);
+		Assert.assertEquals(1, CountingWriter.COMPLETED.get());
+	}
+
+	@Test(expected = AnalysisEngineProcessException.class)
+	public void testStagedFailure() throws Exception {
+		SimplePipeline.runPipelineStaged(CollectionReaderFactory.createCollectionReader(
+				MultiReader.class, MultiReader.PARAM_SIZE, 100), 4,
+				AnalysisEngineFactory.createPrimitive(Annotator.class),
+				AnalysisEngineFactory.createPrimitive(FailingAnnotator.class),
+				AnalysisEngineFactory.createPrimitive(Annotator.class));
+	}
+
 	@Test
 	public void test() throws Exception {
 		SimplePipeline.runPipeline(CollectionReaderFactory.createCollectionReader(Reader.class),
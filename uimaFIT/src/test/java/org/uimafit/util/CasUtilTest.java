@@ -19,19 +19,30 @@
 package org.uimafit.util;
 
 import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.uimafit.util.CasUtil.getAnnotationType;
 import static org.uimafit.util.CasUtil.getType;
+import static org.uimafit.util.CasUtil.indexCovered;
+import static org.uimafit.util.CasUtil.indexCovering;
 import static org.uimafit.util.CasUtil.select;
 import static org.uimafit.util.CasUtil.selectFS;
 import static org.uimafit.util.CasUtil.iterator;
 import static org.uimafit.util.CasUtil.iteratorFS;
+import static org.uimafit.util.CasUtil.selectAllFS;
 import static org.uimafit.util.CasUtil.selectByIndex;
+import static org.uimafit.util.CasUtil.selectCovered;
 import static org.uimafit.util.CasUtil.toText;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
 
 import org.apache.uima.UIMAException;
 import org.apache.uima.cas.ArrayFS;
@@ -43,6 +54,7 @@ import org.apache.uima.jcas.cas.TOP;
 import org.apache.uima.jcas.tcas.Annotation;
 import org.junit.Test;
 import org.uimafit.ComponentTestBase;
+import org.uimafit.type.Sentence;
 import org.uimafit.type.Token;
 
 /**
@@ -190,4 +202,70 @@ public class CasUtilTest extends ComponentTestBase {
 				asList("Rot", "wood", "cheeses", "dew?"),
 				toText((Iterable<AnnotationFS>)(Iterable)selectFS(cas, getType(cas, Token.class))));
 	}
+
+	@Test
+	public void testSelectCoveredOffsets() throws Exception {
+		String text = "Rot wood cheeses dew?";
+		tokenBuilder.buildTokens(jCas, text);
+
+		CAS cas = jCas.getCas();
+		Type type = getType(cas, Token.class);
+		int fsCount = selectAllFS(cas).size();
+
+		assertEquals(asList("wood", "cheeses"), toText(selectCovered(cas, type, 4, 16)));
+		assertEquals(asList("wood"), toText(selectCovered(cas, type, 4, 15)));
+
+		// The lookup must reflect changes to the index
+		cas.addFsToIndexes(cas.createAnnotation(type, 9, 12));
+		assertEquals(asList("wood", "che"), toText(selectCovered(cas, type, 4, 15)));
+
+		// The lookup must not create new feature structures in the CAS
+		assertEquals(fsCount + 1, selectAllFS(cas).size());
+	}
+
+	@Test
+	public void testIndexCoveredCoveringRandom() throws Exception {
+		CAS cas = jCas.getCas();
+		Type tokenType = getType(cas, Token.class);
+		Type sentenceType = getType(cas, Sentence.class);
+		Random rnd = new Random(1);
+		for (int i = 0; i < 300; i++) {
+			int begin = rnd.nextInt(100);
+			int end = begin + rnd.nextInt(30) - 5;
+			cas.addFsToIndexes(cas.createAnnotation(rnd.nextBoolean() ? tokenType : sentenceType,
+					begin, end));
+		}
+
+		Map<AnnotationFS, Collection<AnnotationFS>> covered = indexCovered(cas, sentenceType,
+				tokenType);
+		Map<AnnotationFS, Collection<AnnotationFS>> covering = indexCovering(cas, tokenType,
+				sentenceType);
+
+		// The naive approach is assumed to be correct
+		Map<AnnotationFS, List<AnnotationFS>> expectedCovering =
+			new LinkedHashMap<AnnotationFS, List<AnnotationFS>>();
+		int coveredKeys = 0;
+		for (AnnotationFS s : select(cas, sentenceType)) {
+			List<AnnotationFS> expected = selectCovered(cas, tokenType, s);
+			assertEquals(expected, covered.get(s));
+			coveredKeys += expected.isEmpty() ? 0 : 1;
+			for (AnnotationFS t : expected) {
+				List<AnnotationFS> c = expectedCovering.get(t);
+				if (c == null) {
+					c = new ArrayList<AnnotationFS>();
+					expectedCovering.put(t, c);
+				}
+				c.add(s);
+			}
+		}
+		assertEquals(coveredKeys, covered.size());
+		assertEquals(expectedCovering.size(), covering.size());
+		for (AnnotationFS t : select(cas, tokenType)) {
+			List<AnnotationFS> expected = expectedCovering.get(t);
+			assertEquals(expected == null ? emptyList() : expected, covering.get(t));
+		}
+		for (Entry<AnnotationFS, Collection<AnnotationFS>> e : covering.entrySet()) {
+			assertEquals(expectedCovering.get(e.getKey()), e.getValue());
+		}
+	}
 }
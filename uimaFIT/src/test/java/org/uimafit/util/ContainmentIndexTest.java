@@ -69,4 +69,39 @@ public class ContainmentIndexTest extends ComponentTestBase {
 		idx = ContainmentIndex.create(jCas, Sentence.class, Token.class, Type.BOTH);
 		assertFalse(idx.isContainedInAny(tokens.get(0)));
 	}
+
+	@Test
+	public void testOverlappingAndDirections() throws Exception {
+		Sentence s1 = new Sentence(jCas, 0, 20);
+		s1.addToIndexes();
+		Sentence s2 = new Sentence(jCas, 5, 15);
+		s2.addToIndexes();
+		Token t1 = new Token(jCas, 2, 4);
+		t1.addToIndexes();
+		Token t2 = new Token(jCas, 6, 10);
+		t2.addToIndexes();
+		Token t3 = new Token(jCas, 12, 22);
+		t3.addToIndexes();
+
+		ContainmentIndex<Sentence, Token> both = ContainmentIndex.create(jCas, Sentence.class,
+				Token.class, Type.BOTH);
+		assertEquals(asList(t1, t2), both.containedIn(s1));
+		assertEquals(asList(t2), both.containedIn(s2));
+		assertEquals(asList(s1, s2), both.containing(t2));
+		assertTrue(both.containing(t3).isEmpty());
+		assertTrue(both.isContainedIn(s1, t2));
+		assertFalse(both.isContainedIn(s2, t1));
+		assertFalse(both.isContainedInAny(t3));
+
+		ContainmentIndex<Sentence, Token> direct = ContainmentIndex.create(jCas, Sentence.class,
+				Token.class, Type.DIRECT);
+		assertEquals(asList(t1, t2), direct.containedIn(s1));
+		assertTrue(direct.containing(t2).isEmpty());
+
+		ContainmentIndex<Sentence, Token> reverse = ContainmentIndex.create(jCas, Sentence.class,
+				Token.class, Type.REVERSE);
+		assertTrue(reverse.containedIn(s1).isEmpty());
+		assertEquals(asList(s1, s2), reverse.containing(t2));
+		assertTrue(reverse.isContainedInAny(t1));
+	}
 }
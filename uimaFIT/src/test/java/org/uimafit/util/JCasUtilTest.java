@@ -627,4 +627,43 @@ public class JCasUtilTest extends ComponentTestBase {
 		// Check the first token is not contained in any sentence
 		assertFalse(!index.get(tokens.get(0)).isEmpty());
 	}
+
+	@Test
+	public void testIndexCoveredAfterReset() throws Exception {
+		tokenBuilder.buildTokens(jCas, "Will you come home today ? \n No , tomorrow !");
+
+		List<Sentence> sentences = new ArrayList<Sentence>(select(jCas, Sentence.class));
+		List<List<Token>> tokens = new ArrayList<List<Token>>();
+		for (Sentence s : sentences) {
+			tokens.add(selectCovered(jCas, Token.class, s));
+		}
+
+		Map<Sentence, Collection<Token>> index = indexCovered(jCas, Sentence.class, Token.class);
+
+		// Re-use the CAS for a different document before reading the index.
+		jCas.reset();
+		tokenBuilder.buildTokens(jCas, "Yes \n Maybe not");
+
+		// The index still refers to the annotations it was built from.
+		assertEquals(sentences.size(), index.size());
+		int i = 0;
+		for (Map.Entry<Sentence, Collection<Token>> e : index.entrySet()) {
+			assertTrue(sentences.get(i) == e.getKey());
+			Iterator<Token> covered = e.getValue().iterator();
+			for (Token t : tokens.get(i)) {
+				assertTrue(t == covered.next());
+			}
+			assertFalse(covered.hasNext());
+			i++;
+		}
+		assertEquals(sentences.size(), i);
+
+		// Re-building the same document re-uses the addresses of the indexed annotations, but the
+		// new annotations are not keys of the index
+		jCas.reset();
+		tokenBuilder.buildTokens(jCas, "Will you come home today ? \n No , tomorrow !");
+		for (Sentence s : select(jCas, Sentence.class)) {
+			assertTrue(index.get(s).isEmpty());
+		}
+	}
 }
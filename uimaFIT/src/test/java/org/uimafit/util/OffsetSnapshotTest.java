@@ -0,0 +1,174 @@
+/*
+ Copyright 2012
+ Ubiquitous Knowledge Processing (UKP) Lab
+ Technische Universitaet Darmstadt
+ All rights reserved.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package org.uimafit.util;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.uimafit.util.CasUtil.getType;
+import static org.uimafit.util.CasUtil.select;
+import static org.uimafit.util.CasUtil.selectCovering;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.FSIterator;
+import org.apache.uima.cas.Type;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.junit.Test;
+import org.uimafit.ComponentTestBase;
+import org.uimafit.type.Sentence;
+import org.uimafit.type.Token;
+
+/**
+ * Unit test for {@link OffsetSnapshot}.
+ *
+ * @author Richard Eckart de Castilho
+ */
+public class OffsetSnapshotTest extends ComponentTestBase {
+	@Test
+	public void testSelectCoveringRandom() throws Exception {
+		CAS cas = jCas.getCas();
+		initRandom(cas, 200);
+
+		for (int begin = 0; begin < 110; begin++) {
+			for (int end = begin; end < begin + 20; end++) {
+				assertEquals(naiveCovering(cas, getType(cas, Token.class), begin, end),
+						selectCovering(cas, getType(cas, Token.class), begin, end));
+				assertEquals(naiveCovering(cas, null, begin, end),
+						selectCovering(cas, null, begin, end));
+			}
+		}
+	}
+
+	@Test
+	public void testInvalidation() throws Exception {
+		CAS cas = jCas.getCas();
+		Type tokenType = getType(cas, Token.class);
+
+		Token t1 = new Token(jCas, 0, 10);
+		t1.addToIndexes();
+		assertEquals(asList(t1), selectCovering(cas, tokenType, 2, 4));
+
+		Token t2 = new Token(jCas, 1, 5);
+		t2.addToIndexes();
+		assertEquals(asList(t1, t2), selectCovering(cas, tokenType, 2, 4));
+
+		t1.removeFromIndexes();
+		assertEquals(asList(t2), selectCovering(cas, tokenType, 2, 4));
+
+		// An annotation of another type does not show up in the snapshot
+		OffsetSnapshot<AnnotationFS> snapshot = OffsetSnapshot.get(cas, tokenType);
+		new Sentence(jCas, 0, 10).addToIndexes();
+		assertEquals(1, OffsetSnapshot.get(cas, tokenType).size());
+		assertEquals(snapshot.getBegin(0), OffsetSnapshot.get(cas, tokenType).getBegin(0));
+
+		jCas.reset();
+		assertTrue(selectCovering(cas, tokenType, 2, 4).isEmpty());
+
+		Token t3 = new Token(jCas, 2, 4);
+		t3.addToIndexes();
+		assertEquals(asList(t3), selectCovering(cas, tokenType, 2, 4));
+	}
+
+	@Test
+	public void testSelectCoveredRandom() throws Exception {
+		CAS cas = jCas.getCas();
+		initRandom(cas, 200);
+		Type sentenceType = getType(cas, Sentence.class);
+		OffsetSnapshot<AnnotationFS> snapshot = OffsetSnapshot.get(cas, sentenceType);
+
+		List<AnnotationFS> buffer = new ArrayList<AnnotationFS>();
+		for (AnnotationFS t : select(cas, getType(cas, Token.class))) {
+			assertEquals(CasUtil.selectCovered(cas, sentenceType, t),
+					snapshot.selectCovered(t));
+			assertEquals(CasUtil.selectCovered(cas, sentenceType, t.getBegin(), t.getEnd()),
+					snapshot.selectCovered(t.getBegin(), t.getEnd()));
+
+			buffer.clear();
+			snapshot.selectCovered(t.getBegin(), t.getEnd(), buffer);
+			assertEquals(snapshot.selectCovered(t.getBegin(), t.getEnd()), buffer);
+		}
+	}
+
+	@Test
+	public void testSelectBetweenRandom() throws Exception {
+		CAS cas = jCas.getCas();
+		initRandom(cas, 100);
+		Type sentenceType = getType(cas, Sentence.class);
+		OffsetSnapshot<AnnotationFS> snapshot = OffsetSnapshot.get(cas, sentenceType);
+
+		List<AnnotationFS> tokens = new ArrayList<AnnotationFS>(select(cas, getType(cas,
+				Token.class)));
+		for (AnnotationFS t1 : tokens) {
+			for (AnnotationFS t2 : tokens) {
+				assertEquals(CasUtil.selectBetween(cas, sentenceType, t1, t2),
+						snapshot.selectBetween(t1, t2));
+			}
+		}
+	}
+
+	@Test
+	public void testSelectPrecedingFollowing() throws Exception {
+		tokenBuilder.buildTokens(jCas, "Will you come home today ? \n No , tomorrow !");
+		OffsetSnapshot<Token> snapshot = OffsetSnapshot.get(jCas, Token.class);
+
+		List<Token> tokens = new ArrayList<Token>(JCasUtil.select(jCas, Token.class));
+		for (Token t : tokens) {
+			for (int count = 0; count < 4; count++) {
+				assertEquals(JCasUtil.selectPreceding(jCas, Token.class, t, count),
+						snapshot.selectPreceding(t, count));
+				assertEquals(JCasUtil.selectFollowing(jCas, Token.class, t, count),
+						snapshot.selectFollowing(t, count));
+			}
+			assertEquals(tokens.indexOf(t), snapshot.indexOf(t));
+		}
+
+		// Preceding annotations are those that end before the anchor starts
+		Sentence s = new Sentence(jCas, 5, 13);
+		assertEquals(asList(tokens.get(0)), snapshot.selectPreceding(s, 5));
+		assertEquals(tokens.subList(3, 5), snapshot.selectFollowing(s, 2));
+	}
+
+	private void initRandom(CAS aCas, int aCount) {
+		Random rnd = new Random(aCount);
+		for (int i = 0; i < aCount; i++) {
+			int begin = rnd.nextInt(100);
+			int end = begin + rnd.nextInt(30) - 5;
+			Type type = rnd.nextBoolean() ? getType(aCas, Token.class) : getType(aCas,
+					Sentence.class);
+			aCas.addFsToIndexes(aCas.createAnnotation(type, begin, end));
+		}
+	}
+
+	private List<AnnotationFS> naiveCovering(CAS aCas, Type aType, int aBegin, int aEnd) {
+		List<AnnotationFS> list = new ArrayList<AnnotationFS>();
+		FSIterator<AnnotationFS> it = aCas.getAnnotationIndex().iterator();
+		while (it.hasNext()) {
+			AnnotationFS a = it.next();
+			if (a.getBegin() <= aBegin && a.getEnd() >= aEnd
+					&& (aType == null || aCas.getTypeSystem().subsumes(aType, a.getType()))) {
+				list.add(a);
+			}
+		}
+		return list;
+	}
+}